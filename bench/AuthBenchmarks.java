@@ -0,0 +1,18 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Login and per-request session checks against a throwaway users file.
+public class AuthBenchmarks {
+    public static void run(Bench bench) throws Exception {
+        Path dir = Files.createTempDirectory("bench-auth");
+        AuthService auth = new AuthService(dir.resolve("users.txt"));
+        auth.ensureUsersFile();
+        int threads = Integer.parseInt(bench.option("threads", "8"));
+
+        bench.run("auth.loginLogout", Bench.params(), 1, t -> auth.logout(auth.login("admin", "admin")));
+
+        String token = auth.login("admin", "admin");
+        bench.run("auth.requireSession", Bench.params(), 1, t -> Bench.consume(auth.requireSession(token)));
+        bench.run("auth.requireSession", Bench.params(), threads, t -> Bench.consume(auth.requireSession(token)));
+    }
+}
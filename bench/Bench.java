@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Small benchmark runner for the store, auth, JSON and HTTP hot paths. Each benchmark runs warmup
+// iterations, then timed iterations in which every thread calls the operation until told to stop.
+// Results are printed and written as JSON for trend tracking.
+//
+//   javac -d out src/*.java bench/*.java
+//   java -cp out Bench --suite=all --sizes=1000,100000 --out=bench-results.json
+//
+// Options: --suite=all|store|auth|json|http, --sizes (reservations preloaded for store runs;
+// 1000000 needs about 2 GB of heap), --threads (for the concurrent mixes), --warmup, --iterations,
+// --time (milliseconds per iteration), --durability (for write benchmarks), --out.
+public class Bench {
+    // Results are written here so the JIT cannot drop the work that produced them.
+    private static volatile Object sink;
+
+    public interface Op {
+        void run(int thread) throws Exception;
+    }
+
+    public static final class Result {
+        public final String benchmark;
+        public final Map<String, String> params;
+        public final int threads;
+        // Operations per second across all threads, one entry per measured iteration.
+        public final double[] opsPerSecond;
+
+        Result(String benchmark, Map<String, String> params, int threads, double[] opsPerSecond) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.threads = threads;
+            this.opsPerSecond = opsPerSecond;
+        }
+
+        public double mean() {
+            double sum = 0;
+            for (double v : opsPerSecond) sum += v;
+            return sum / opsPerSecond.length;
+        }
+
+        // Half-width of a ~99% confidence interval of the mean.
+        public double error() {
+            if (opsPerSecond.length < 2) return 0;
+            double mean = mean();
+            double sq = 0;
+            for (double v : opsPerSecond) sq += (v - mean) * (v - mean);
+            return 2.576 * Math.sqrt(sq / (opsPerSecond.length - 1)) / Math.sqrt(opsPerSecond.length);
+        }
+
+        // Average time one thread spends per operation.
+        public double nanosPerOp() {
+            return threads * 1e9 / mean();
+        }
+    }
+
+    private final Map<String, String> options;
+    private final int warmup;
+    private final int iterations;
+    private final long iterationMillis;
+    private final List<Result> results = new ArrayList<>();
+
+    public Bench(Map<String, String> options) {
+        this.options = options;
+        this.warmup = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        this.iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        this.iterationMillis = Long.parseLong(options.getOrDefault("time", "1000"));
+    }
+
+    public String option(String name, String fallback) {
+        return options.getOrDefault(name, fallback);
+    }
+
+    public static void consume(Object o) {
+        sink = o;
+    }
+
+    public Result run(String benchmark, Map<String, String> params, int threads, Op op) throws Exception {
+        for (int i = 0; i < warmup; i++) iteration(threads, op);
+        double[] ops = new double[iterations];
+        for (int i = 0; i < iterations; i++) ops[i] = iteration(threads, op);
+        Result r = new Result(benchmark, params, threads, ops);
+        results.add(r);
+        System.out.println(String.format(Locale.ROOT, "%-28s %-40s threads=%-3d %14.1f ops/s  +- %-12.1f %12.1f ns/op",
+                benchmark, params, threads, r.mean(), r.error(), r.nanosPerOp()));
+        return r;
+    }
+
+    private double iteration(int threads, Op op) throws Exception {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    long n = 0;
+                    while (!stop.get()) {
+                        op.run(id);
+                        n++;
+                    }
+                    counts[id] = n;
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        ready.await();
+        long started = System.nanoTime();
+        go.countDown();
+        Thread.sleep(iterationMillis);
+        stop.set(true);
+        for (Thread w : workers) w.join();
+        long elapsed = System.nanoTime() - started;
+        if (failure.get() != null) throw failure.get();
+        long total = 0;
+        for (long c : counts) total += c;
+        return total * 1e9 / elapsed;
+    }
+
+    // JMH-like layout: one object per benchmark and parameter set, scores in ops/s.
+    public void writeJson(Path out) throws IOException {
+        try (OutputStream os = Files.newOutputStream(out); JsonWriter w = new JsonWriter(os)) {
+            w.beginArray();
+            for (Result r : results) {
+                w.beginObject()
+                        .field("benchmark", r.benchmark)
+                        .field("mode", "thrpt")
+                        .field("threads", r.threads)
+                        .field("warmupIterations", warmup)
+                        .field("measurementIterations", iterations)
+                        .field("measurementTime", iterationMillis + " ms")
+                        .name("params").beginObject();
+                for (Map.Entry<String, String> e : r.params.entrySet()) w.field(e.getKey(), e.getValue());
+                w.endObject()
+                        .name("primaryMetric").beginObject()
+                        .name("score").rawValue(number(r.mean()))
+                        .name("scoreError").rawValue(number(r.error()))
+                        .field("scoreUnit", "ops/s")
+                        .name("rawData").beginArray();
+                for (double v : r.opsPerSecond) w.rawValue(number(v));
+                w.endArray().endObject()
+                        .name("secondaryMetrics").beginObject()
+                        .name("avgTime").beginObject()
+                        .name("score").rawValue(number(r.nanosPerOp()))
+                        .field("scoreUnit", "ns/op")
+                        .endObject().endObject()
+                        .endObject();
+            }
+            w.endArray();
+        }
+    }
+
+    private static String number(double v) {
+        return String.format(Locale.ROOT, "%.3f", v);
+    }
+
+    public static Map<String, String> params(String... keyValues) {
+        Map<String, String> m = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) m.put(keyValues[i], keyValues[i + 1]);
+        return m;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            else options.put(arg.substring(2), "true");
+        }
+        Bench bench = new Bench(options);
+        String suite = options.getOrDefault("suite", "all");
+        if (suite.equals("all") || suite.equals("json")) JsonBenchmarks.run(bench);
+        if (suite.equals("all") || suite.equals("auth")) AuthBenchmarks.run(bench);
+        if (suite.equals("all") || suite.equals("store")) StoreBenchmarks.run(bench);
+        if (suite.equals("all") || suite.equals("http")) HttpBenchmarks.run(bench);
+
+        Path out = Path.of(options.getOrDefault("out", "bench-results.json"));
+        bench.writeJson(out);
+        System.out.println("Results written to " + out.toAbsolutePath());
+        // The in-process HTTP server keeps non-daemon threads alive.
+        System.exit(0);
+    }
+}
@@ -0,0 +1,73 @@
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+// End-to-end request latency: the full Main server started in-process on a free localhost port,
+// with its working directory in a temp folder, driven by java.net.http.HttpClient.
+public class HttpBenchmarks {
+    private static final int RESERVATIONS = 1000;
+
+    public static void run(Bench bench) throws Exception {
+        Path dir = Files.createTempDirectory("bench-http");
+        Files.createDirectories(dir.resolve("data"));
+        Files.createDirectories(dir.resolve("public"));
+        Files.writeString(dir.resolve("public").resolve("index.html"), "<!doctype html><title>bench</title>");
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        System.setProperty("user.dir", dir.toString());
+        Main.main(new String[]{String.valueOf(port)});
+
+        String base = "http://localhost:" + port;
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String login = "{\"username\":\"admin\",\"password\":\"admin\"}";
+        String token = JsonUtil.parseFlatObject(send(client, post(base + "/api/login", null, login))).get("token");
+
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < RESERVATIONS; i++) {
+            LocalDate checkIn = LocalDate.of(2030, 1, 1).plusDays(i % 300);
+            rows.append("{\"reservationNumber\":\"H").append(i).append("\",\"guestName\":\"Guest ").append(i)
+                    .append("\",\"address\":\"Galle\",\"contactNumber\":\"0771234567\",\"roomType\":\"STANDARD\",\"checkIn\":\"")
+                    .append(checkIn).append("\",\"checkOut\":\"").append(checkIn.plusDays(1)).append("\"}\n");
+        }
+        send(client, post(base + "/api/import/reservations", token, rows.toString()));
+
+        int threads = Integer.parseInt(bench.option("threads", "8"));
+        HttpRequest me = get(base + "/api/me", token);
+        HttpRequest list = get(base + "/api/reservations?limit=20", token);
+        bench.run("http.login", Bench.params(), 1, t -> send(client, post(base + "/api/login", null, login)));
+        bench.run("http.me", Bench.params(), 1, t -> send(client, me));
+        bench.run("http.listPage", Bench.params("limit", "20"), 1, t -> send(client, list));
+        bench.run("http.listPage", Bench.params("limit", "20"), threads, t -> send(client, list));
+        bench.run("http.reservation", Bench.params(), threads,
+                t -> send(client, get(base + "/api/reservations/H" + ThreadLocalRandom.current().nextInt(RESERVATIONS), token)));
+        bench.run("http.bill", Bench.params(), threads,
+                t -> send(client, get(base + "/api/bill/H" + ThreadLocalRandom.current().nextInt(RESERVATIONS), token)));
+    }
+
+    private static HttpRequest get(String url, String token) {
+        return HttpRequest.newBuilder(URI.create(url)).header("Authorization", "Bearer " + token).GET().build();
+    }
+
+    private static HttpRequest post(String url, String token, String body) {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(url)).POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) b.header("Authorization", "Bearer " + token);
+        return b.build();
+    }
+
+    private static String send(HttpClient client, HttpRequest request) throws Exception {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode() + ": " + response.body());
+        }
+        Bench.consume(response);
+        return response.body();
+    }
+}
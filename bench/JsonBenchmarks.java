@@ -0,0 +1,125 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Request parsing and response encoding, single threaded. json.parseFlatObject.baseline is the
+// string-scanning parser JsonUtil used before JsonReader, kept here as the point of comparison.
+public class JsonBenchmarks {
+    private static final String RESERVATION_JSON = "{\"reservationNumber\":\"R-100234\",\"guestName\":\"Amara \\\"Ami\\\" Perera\","
+            + "\"address\":\"12/4 Galle Road, Colombo 03\",\"contactNumber\":\"0771234567\",\"roomType\":\"DELUXE\","
+            + "\"checkIn\":\"2026-12-20\",\"checkOut\":\"2026-12-27\",\"notes\":{\"late\":true,\"tags\":[1,2,3]}}";
+    private static final String[] FIELDS = {
+            "reservationNumber", "guestName", "address", "contactNumber", "roomType", "checkIn", "checkOut"
+    };
+
+    public static void run(Bench bench) throws Exception {
+        byte[] body = RESERVATION_JSON.getBytes(StandardCharsets.UTF_8);
+        String text = "Line one\nsaid \"hello\" to the caf\u00e9\tand left \u2013 twice";
+        Reservation r = new Reservation("R-100234", "nippu", "Amara \"Ami\" Perera", "12/4 Galle Road, Colombo 03", "0771234567", "DELUXE",
+                LocalDate.of(2026, 12, 20), LocalDate.of(2026, 12, 27));
+
+        bench.run("json.parseFlatObject.baseline", Bench.params(), 1, t -> Bench.consume(baselineParseFlatObject(RESERVATION_JSON)));
+        bench.run("json.parseFlatObject", Bench.params(), 1, t -> Bench.consume(JsonUtil.parseFlatObject(RESERVATION_JSON)));
+        bench.run("json.readFields", Bench.params("fields", String.valueOf(FIELDS.length)), 1,
+                t -> Bench.consume(JsonUtil.readFields(new JsonReader(new ByteArrayInputStream(body), body.length), FIELDS)));
+        bench.run("json.escape", Bench.params(), 1, t -> Bench.consume(JsonUtil.escape(text)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        bench.run("json.writeReservation", Bench.params(), 1, t -> {
+            out.reset();
+            try (JsonWriter w = new JsonWriter(out)) {
+                w.beginObject().field("ok", true).name("reservation").beginObject()
+                        .field("reservationNumber", r.reservationNumber)
+                        .field("guestName", r.guestName)
+                        .field("address", r.address)
+                        .field("contactNumber", r.contactNumber)
+                        .field("roomType", r.roomType)
+                        .field("checkIn", r.checkIn.toString())
+                        .field("checkOut", r.checkOut.toString())
+                        .endObject().endObject();
+            }
+            Bench.consume(out.size());
+        });
+    }
+
+    // The original JsonUtil.parseFlatObject: string keys and values only, stops at anything else.
+    private static Map<String, String> baselineParseFlatObject(String json) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (json == null) return map;
+        String s = json.trim();
+        if (s.isEmpty()) return map;
+        if (s.startsWith("{")) s = s.substring(1);
+        if (s.endsWith("}")) s = s.substring(0, s.length() - 1);
+        s = s.trim();
+        if (s.isEmpty()) return map;
+
+        int i = 0;
+        while (i < s.length()) {
+            i = skipWs(s, i);
+            if (i >= s.length()) break;
+            if (s.charAt(i) != '"') break;
+            ParseResult key = parseJsonString(s, i);
+            i = skipWs(s, key.next);
+            if (i >= s.length() || s.charAt(i) != ':') break;
+            i++;
+            i = skipWs(s, i);
+            if (i >= s.length() || s.charAt(i) != '"') break;
+            ParseResult val = parseJsonString(s, i);
+            map.put(key.value, val.value);
+            i = skipWs(s, val.next);
+            if (i < s.length() && s.charAt(i) == ',') i++;
+        }
+        return map;
+    }
+
+    private static int skipWs(String s, int i) {
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return i;
+            i++;
+        }
+        return i;
+    }
+
+    private static class ParseResult {
+        final String value;
+        final int next;
+
+        private ParseResult(String value, int next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private static ParseResult parseJsonString(String s, int startQuote) {
+        int i = startQuote + 1;
+        StringBuilder out = new StringBuilder();
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                return new ParseResult(out.toString(), i + 1);
+            }
+            if (c == '\\') {
+                i++;
+                if (i >= s.length()) break;
+                char esc = s.charAt(i);
+                switch (esc) {
+                    case '"': out.append('"'); break;
+                    case '\\': out.append('\\'); break;
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    default: out.append(esc);
+                }
+                i++;
+                continue;
+            }
+            out.append(c);
+            i++;
+        }
+        return new ParseResult(out.toString(), i);
+    }
+}
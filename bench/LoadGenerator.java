@@ -0,0 +1,337 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Replays a mix of logins, dashboard list calls, bill lookups and bookings against a running server
+// on this machine, and reports throughput, error rates and latency percentiles per endpoint.
+//
+//   java -cp out LoadGenerator --target=http://localhost:8080 --mode=open --rate=500 --duration=30
+//
+// Modes:
+//   closed  --users virtual users each send, wait for the answer, optionally pause --think ms.
+//           With --rate the users are paced to that total rate instead.
+//   open    requests start on a fixed --rate schedule whether or not earlier ones have finished.
+// Latency is measured from when a request was due to start, not when it was actually sent, so a
+// stalled server is charged for the requests it held up (coordinated omission correction). The
+// plain service time is reported alongside. Unpaced closed-loop runs have no schedule; their
+// "latency" equals service time and is flagged as uncorrected.
+//
+// Other options: --mix=login:10,list:50,bill:25,book:15, --warmup (seconds, not reported),
+// --username/--password (an admin account), --cleanup (delete bookings made by the run),
+// --out (JSON report, default load-report.json).
+public class LoadGenerator {
+    private static final String[] ENDPOINTS = {"login", "list", "bill", "book"};
+
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private final URI target;
+    private final String username;
+    private final String password;
+    private final int[] weights = new int[ENDPOINTS.length];
+    private final HttpClient client;
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final List<String> billIds = new ArrayList<>();
+    private final List<String> created = java.util.Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong bookingSequence = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private volatile boolean recording;
+    private String token;
+
+    LoadGenerator(URI target, String username, String password, String mix) {
+        String host = target.getHost();
+        if (host == null || !(host.equals("localhost") || host.equals("127.0.0.1") || host.equals("[::1]") || host.equals("::1"))) {
+            throw new IllegalArgumentException("The load generator only targets localhost, not " + host);
+        }
+        this.target = target;
+        this.username = username;
+        this.password = password;
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            int i = java.util.Arrays.asList(ENDPOINTS).indexOf(kv[0].trim());
+            if (i < 0 || kv.length != 2) throw new IllegalArgumentException("Unknown mix entry: " + part);
+            weights[i] = Integer.parseInt(kv[1].trim());
+        }
+        for (String e : ENDPOINTS) stats.put(e, new Stats());
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    void setUp() throws Exception {
+        String body = "{\"username\":" + JsonUtil.jsonString(username) + ",\"password\":" + JsonUtil.jsonString(password) + "}";
+        HttpResponse<String> login = client.send(post("/api/login", body, null), HttpResponse.BodyHandlers.ofString());
+        token = JsonUtil.parseFlatObject(login.body()).get("token");
+        if (login.statusCode() != 200 || token == null) throw new IllegalStateException("Login failed: " + login.body());
+
+        for (int i = 0; i < 20; i++) {
+            String id = "LT-" + runId + "-seed" + i;
+            HttpResponse<String> r = client.send(post("/api/reservations", booking(id), token), HttpResponse.BodyHandlers.ofString());
+            if (r.statusCode() == 200) {
+                billIds.add(id);
+                created.add(id);
+            }
+        }
+        if (billIds.isEmpty()) throw new IllegalStateException("Could not create reservations to look up");
+    }
+
+    // Runs until `deadline`, recording only while `recording` is set.
+    void closedLoop(int users, double rate, long thinkMillis, long deadline) throws InterruptedException {
+        long intervalNanos = rate > 0 ? (long) (1e9 * users / rate) : 0;
+        try (ExecutorService vt = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int u = 0; u < users; u++) {
+                long offset = intervalNanos * u / Math.max(1, users);
+                vt.submit(() -> {
+                    long due = System.nanoTime() + offset;
+                    while (System.nanoTime() < deadline) {
+                        if (intervalNanos > 0) {
+                            sleepUntil(due);
+                            issue(due);
+                            due += intervalNanos;
+                        } else {
+                            issue(System.nanoTime());
+                            if (thinkMillis > 0) sleepUntil(System.nanoTime() + thinkMillis * 1_000_000L);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    void openLoop(double rate, long deadline) throws InterruptedException {
+        long intervalNanos = (long) (1e9 / rate);
+        try (ExecutorService vt = Executors.newVirtualThreadPerTaskExecutor()) {
+            long due = System.nanoTime();
+            while (due < deadline) {
+                sleepUntil(due);
+                long start = due;
+                vt.submit(() -> issue(start));
+                due += intervalNanos;
+            }
+        }
+    }
+
+    private void issue(long dueNanos) {
+        String endpoint = pick();
+        long sent = System.nanoTime();
+        boolean ok;
+        try {
+            HttpResponse<String> r = client.send(request(endpoint), HttpResponse.BodyHandlers.ofString());
+            ok = r.statusCode() == 200;
+        } catch (IOException e) {
+            ok = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long done = System.nanoTime();
+        if (!recording) return;
+        Stats s = stats.get(endpoint);
+        s.latency.record(done - dueNanos);
+        s.service.record(done - sent);
+        if (!ok) s.errors.increment();
+    }
+
+    private HttpRequest request(String endpoint) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        switch (endpoint) {
+            case "login":
+                return post("/api/login", "{\"username\":" + JsonUtil.jsonString(username) + ",\"password\":" + JsonUtil.jsonString(password) + "}", null);
+            case "list":
+                return get("/api/reservations?limit=20");
+            case "bill":
+                return get("/api/bill/" + billIds.get(rnd.nextInt(billIds.size())));
+            default:
+                String id = "LT-" + runId + "-" + bookingSequence.incrementAndGet();
+                created.add(id);
+                return post("/api/reservations", booking(id), token);
+        }
+    }
+
+    private String pick() {
+        int totalWeight = 0;
+        for (int w : weights) totalWeight += w;
+        int n = ThreadLocalRandom.current().nextInt(Math.max(1, totalWeight));
+        for (int i = 0; i < weights.length; i++) {
+            n -= weights[i];
+            if (n < 0) return ENDPOINTS[i];
+        }
+        return ENDPOINTS[0];
+    }
+
+    // Far-future stays spread over ten years so bookings rarely run out of rooms.
+    private static String booking(String id) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        LocalDate checkIn = LocalDate.of(2040, 1, 1).plusDays(rnd.nextInt(3650));
+        String roomType = new String[]{"STANDARD", "DELUXE", "SUITE"}[rnd.nextInt(3)];
+        return "{\"reservationNumber\":" + JsonUtil.jsonString(id) + ",\"guestName\":\"Load Test\",\"address\":\"localhost\","
+                + "\"contactNumber\":\"0000000000\",\"roomType\":\"" + roomType + "\",\"checkIn\":\"" + checkIn
+                + "\",\"checkOut\":\"" + checkIn.plusDays(1 + rnd.nextInt(3)) + "\"}";
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(target.resolve(path)).timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + token).GET().build();
+    }
+
+    private HttpRequest post(String path, String body, String bearer) {
+        HttpRequest.Builder b = HttpRequest.newBuilder(target.resolve(path)).timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body));
+        if (bearer != null) b.header("Authorization", "Bearer " + bearer);
+        return b.build();
+    }
+
+    void cleanUp() {
+        for (String id : new ArrayList<>(created)) {
+            try {
+                HttpRequest r = HttpRequest.newBuilder(target.resolve("/api/reservations/" + id))
+                        .header("Authorization", "Bearer " + token).DELETE().build();
+                client.send(r, HttpResponse.BodyHandlers.discarding());
+            } catch (IOException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void report(String mode, boolean corrected, double seconds, Path out) throws IOException {
+        System.out.println(String.format(Locale.ROOT, "%-6s %9s %8s %9s %9s %9s %9s %9s %9s %10s",
+                "", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99"));
+        LatencyHistogram all = new LatencyHistogram();
+        long allErrors = 0;
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            if (s.latency.count() == 0) continue;
+            all.add(s.latency);
+            allErrors += s.errors.sum();
+            printRow(e.getKey(), s.latency, s.errors.sum(), seconds, s.service.percentile(99));
+        }
+        printRow("total", all, allErrors, seconds, -1);
+        if (!corrected) System.out.println("Closed loop without --rate: latencies are not corrected for coordinated omission.");
+
+        try (OutputStream os = Files.newOutputStream(out); JsonWriter w = new JsonWriter(os)) {
+            w.beginObject()
+                    .field("target", target.toString())
+                    .field("mode", mode)
+                    .field("coordinatedOmissionCorrected", corrected)
+                    .name("durationSeconds").rawValue(String.format(Locale.ROOT, "%.3f", seconds))
+                    .name("endpoints").beginObject();
+            for (Map.Entry<String, Stats> e : stats.entrySet()) {
+                Stats s = e.getValue();
+                if (s.latency.count() == 0) continue;
+                w.name(e.getKey()).beginObject()
+                        .field("requests", s.latency.count())
+                        .field("errors", s.errors.sum())
+                        .name("throughput").rawValue(String.format(Locale.ROOT, "%.2f", s.latency.count() / seconds))
+                        .name("latencyMicros");
+                writePercentiles(w, s.latency);
+                w.name("serviceTimeMicros");
+                writePercentiles(w, s.service);
+                w.endObject();
+            }
+            w.endObject()
+                    .field("requests", all.count())
+                    .field("errors", allErrors)
+                    .name("throughput").rawValue(String.format(Locale.ROOT, "%.2f", all.count() / seconds))
+                    .name("latencyMicros");
+            writePercentiles(w, all);
+            w.endObject();
+        }
+        System.out.println("Report written to " + out.toAbsolutePath());
+    }
+
+    private static void printRow(String name, LatencyHistogram h, long errors, double seconds, long serviceP99) {
+        System.out.println(String.format(Locale.ROOT, "%-6s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %10s",
+                name, h.count(), errors, h.count() / seconds, ms(h.percentile(50)), ms(h.percentile(90)),
+                ms(h.percentile(99)), ms(h.percentile(99.9)), ms(h.max()),
+                serviceP99 < 0 ? "" : String.format(Locale.ROOT, "%.2f", ms(serviceP99))));
+    }
+
+    private static void writePercentiles(JsonWriter w, LatencyHistogram h) throws IOException {
+        w.beginObject()
+                .name("mean").rawValue(String.format(Locale.ROOT, "%.1f", h.mean() / 1000.0))
+                .field("p50", h.percentile(50) / 1000)
+                .field("p90", h.percentile(90) / 1000)
+                .field("p99", h.percentile(99) / 1000)
+                .field("p99.9", h.percentile(99.9) / 1000)
+                .field("max", h.max() / 1000)
+                .endObject();
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static void sleepUntil(long nanoTime) throws InterruptedException {
+        long wait = nanoTime - System.nanoTime();
+        if (wait > 0) Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> o = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) o.put(arg.substring(2, eq), arg.substring(eq + 1));
+            else o.put(arg.substring(2), "true");
+        }
+        String mode = o.getOrDefault("mode", "closed");
+        int users = Integer.parseInt(o.getOrDefault("users", "50"));
+        double rate = Double.parseDouble(o.getOrDefault("rate", mode.equals("open") ? "200" : "0"));
+        long think = Long.parseLong(o.getOrDefault("think", "0"));
+        long warmup = Long.parseLong(o.getOrDefault("warmup", "5"));
+        long duration = Long.parseLong(o.getOrDefault("duration", "30"));
+        if (!mode.equals("open") && !mode.equals("closed")) throw new IllegalArgumentException("Mode must be open or closed");
+        if (mode.equals("open") && rate <= 0) throw new IllegalArgumentException("Open loop needs --rate");
+
+        LoadGenerator gen = new LoadGenerator(
+                URI.create(o.getOrDefault("target", "http://localhost:8080")),
+                o.getOrDefault("username", "admin"),
+                o.getOrDefault("password", "admin"),
+                o.getOrDefault("mix", "login:10,list:50,bill:25,book:15"));
+        gen.setUp();
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup * 1_000_000_000L;
+        long deadline = measureFrom + duration * 1_000_000_000L;
+        Thread flip = Thread.ofVirtual().start(() -> {
+            try {
+                sleepUntil(measureFrom);
+                gen.recording = true;
+            } catch (InterruptedException ignored) {
+            }
+        });
+        if (mode.equals("open")) gen.openLoop(rate, deadline);
+        else gen.closedLoop(users, rate, think, deadline);
+        flip.join();
+        double seconds = (System.nanoTime() - measureFrom) / 1e9;
+
+        gen.report(mode, mode.equals("open") || rate > 0, seconds, Path.of(o.getOrDefault("out", "load-report.json")));
+        if (o.containsKey("cleanup")) gen.cleanUp();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,90 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// ReservationStore at several book sizes: point lookups, owner queries, writes and a concurrent
+// read/write mix. Writes use --durability (default none, so the numbers show the code path rather
+// than the disk); pass --durability=batch to include fsync.
+public class StoreBenchmarks {
+    private static final String[] ROOM_TYPES = {"STANDARD", "DELUXE", "SUITE"};
+    private static final int OWNERS = 1000;
+
+    public static void run(Bench bench) throws Exception {
+        String format = bench.option("format", "text");
+        Durability durability = Durability.named(bench.option("durability", "none"));
+        int threads = Integer.parseInt(bench.option("threads", "8"));
+        for (String s : bench.option("sizes", "1000,100000").split(",")) {
+            int size = Integer.parseInt(s.trim());
+            Path dir = Files.createTempDirectory("bench-store");
+            Path file = dir.resolve("reservations");
+            try {
+                ReservationStore store = new ReservationStore(file, null, ReservationFormat.named(format));
+                store.durability(durability);
+                String[] ids = populate(store, size);
+                Map<String, String> p = Bench.params("size", String.valueOf(size), "format", format,
+                        "durability", durability.name().toLowerCase());
+                run(bench, store, ids, p, threads);
+            } finally {
+                try (Stream<Path> files = Files.list(dir)) {
+                    files.forEach(f -> f.toFile().delete());
+                }
+                Files.deleteIfExists(dir);
+            }
+        }
+    }
+
+    private static void run(Bench bench, ReservationStore store, String[] ids, Map<String, String> p, int threads) throws Exception {
+        bench.run("store.find", p, 1, t -> Bench.consume(store.find(ids[ThreadLocalRandom.current().nextInt(ids.length)])));
+
+        bench.run("store.queryOwnerPage", p, 1, t -> {
+            Map<String, String> params = Map.of("ownerUsername", "owner" + ThreadLocalRandom.current().nextInt(OWNERS), "limit", "20");
+            ReservationQuery q = ReservationQuery.fromParams(params, null);
+            Iterator<Reservation> it = store.query(q);
+            for (int i = 0; i < q.limit && it.hasNext(); i++) Bench.consume(it.next());
+        });
+
+        AtomicLong sequence = new AtomicLong();
+        Bench.Op addDelete = t -> {
+            String id = "B" + sequence.incrementAndGet();
+            store.add(reservation(id, ThreadLocalRandom.current().nextInt(1_000_000)));
+            store.delete(id);
+        };
+        bench.run("store.addDelete", p, 1, addDelete);
+        bench.run("store.addDelete", p, threads, addDelete);
+
+        // 90% lookups, 10% updates of random existing reservations.
+        bench.run("store.mixed90read10write", p, threads, t -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            int n = rnd.nextInt(ids.length);
+            if (rnd.nextInt(10) == 0) store.update(reservation(ids[n], n));
+            else Bench.consume(store.find(ids[n]));
+        });
+    }
+
+    private static String[] populate(ReservationStore store, int size) throws Exception {
+        String[] ids = new String[size];
+        List<Reservation> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ids[i] = "R" + i;
+            batch.add(reservation(ids[i], i));
+            if (batch.size() == 10_000 || i == size - 1) {
+                store.addAll(batch);
+                batch.clear();
+            }
+        }
+        return ids;
+    }
+
+    private static Reservation reservation(String id, int n) {
+        LocalDate checkIn = LocalDate.of(2024, 1, 1).plusDays(n % 1500);
+        return new Reservation(id, "owner" + (n % OWNERS), "Guest " + n, n + " Beach Road, Galle", "0771234567",
+                ROOM_TYPES[n % ROOM_TYPES.length], checkIn, checkIn.plusDays(1 + n % 7));
+    }
+}
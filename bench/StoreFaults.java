@@ -0,0 +1,354 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+// Fault-injection checks for the reservation log: failed forces, torn writes, a rollback that
+// itself fails, a writer process killed mid-stream, logs cut at every byte of their tail, and
+// damage in the middle of a binary log. Each check reopens the file and asserts what replay
+// brings back. Exits non-zero if any check fails.
+//
+//   javac -d out src/*.java bench/*.java
+//   java -cp out StoreFaults
+public class StoreFaults {
+    private static final String[] FORMATS = {"text", "binary"};
+    private static int checks;
+    private static int failures;
+
+    // Delegates to the store's append channel, failing the next write or force on request.
+    static final class FaultyChannel extends FileChannel {
+        private final FileChannel delegate;
+        volatile int failForces;
+        volatile int tearWrites;
+        volatile boolean failTruncate;
+
+        FaultyChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (tearWrites > 0) {
+                tearWrites--;
+                ByteBuffer half = src.slice();
+                half.limit(Math.max(1, src.remaining() / 2));
+                int n = delegate.write(half);
+                src.position(src.position() + n);
+                throw new IOException("Injected torn write after " + n + " bytes");
+            }
+            return delegate.write(src);
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failForces > 0) {
+                failForces--;
+                throw new IOException("Injected force failure");
+            }
+            delegate.force(metaData);
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failTruncate) throw new IOException("Injected truncate failure");
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--writer")) {
+            writer(Path.of(args[1]), args[2]);
+            return;
+        }
+        for (String format : FORMATS) {
+            injected(format, "failed force", ch -> ch.failForces = 1, false);
+            injected(format, "torn write", ch -> ch.tearWrites = 1, false);
+            injected(format, "torn write with failed rollback", ch -> {
+                ch.tearWrites = 1;
+                ch.failTruncate = true;
+            }, true);
+            killedWriter(format);
+            cutTail(format);
+        }
+        damagedMiddle();
+        System.out.println(checks + " checks, " + failures + " failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // Two good writes, one that hits the fault, then one more. The failed write must not come back
+    // on replay; the write after it must, unless the store had to stop accepting writes.
+    private static void injected(String format, String name, java.util.function.Consumer<FaultyChannel> arm, boolean refusesLater) throws Exception {
+        String label = format + " " + name;
+        Path dir = Files.createTempDirectory("store-faults");
+        Path file = dir.resolve("reservations");
+        try {
+            ReservationStore store = new ReservationStore(file, null, ReservationFormat.named(format));
+            FaultyChannel[] channel = new FaultyChannel[1];
+            store.logChannels = c -> channel[0] = new FaultyChannel(c);
+            store.add(reservation("A1", "alice"));
+            store.add(reservation("A2", "alice"));
+            arm.accept(channel[0]);
+            // A new owner, so the binary format's owner dictionary has to be rolled back too.
+            check(label + ": faulty add fails", throwsIo(() -> store.add(reservation("F1", "fred"))));
+            check(label + ": failed add is not in the index", store.find("F1") == null);
+            if (refusesLater) {
+                check(label + ": later writes are refused", throwsIo(() -> store.add(reservation("A3", "fred"))));
+            } else {
+                store.add(reservation("A3", "fred"));
+            }
+
+            Set<String> replayed = replay(file, format);
+            Set<String> expected = new TreeSet<>(refusesLater ? Set.of("A1", "A2") : Set.of("A1", "A2", "A3"));
+            check(label + ": replay gives " + expected + ", got " + replayed, replayed.equals(expected));
+
+            ReservationStore reopened = new ReservationStore(file, null, ReservationFormat.named(format));
+            reopened.add(reservation("A4", "fred"));
+            check(label + ": log accepts writes after restart", replay(file, format).contains("A4"));
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // A child process appends and deletes as fast as it can and reports each acknowledged change
+    // (and each delete before issuing it); it is killed without warning and the log must still hold
+    // every acknowledged change.
+    private static void killedWriter(String format) throws Exception {
+        String label = format + " killed writer";
+        Path dir = Files.createTempDirectory("store-faults");
+        Path file = dir.resolve("reservations");
+        try {
+            String java = ProcessHandle.current().info().command().orElse("java");
+            Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "StoreFaults", "--writer", file.toString(), format)
+                    .redirectErrorStream(true).start();
+            Set<String> added = new LinkedHashSet<>();
+            Set<String> deleting = new LinkedHashSet<>();
+            Set<String> deleted = new LinkedHashSet<>();
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+                long deadline = System.nanoTime() + 10_000_000_000L;
+                String line;
+                while ((line = out.readLine()) != null) {
+                    if (line.startsWith("+")) added.add(line.substring(1));
+                    else if (line.startsWith("?")) deleting.add(line.substring(1));
+                    else if (line.startsWith("-")) deleted.add(line.substring(1));
+                    if (added.size() >= 3000 || System.nanoTime() > deadline) {
+                        // Through the handle, so the pipe stays open for the lines still in it.
+                        child.toHandle().destroyForcibly();
+                        break;
+                    }
+                }
+                // Lines already printed were acknowledged before the kill.
+                while ((line = out.readLine()) != null) {
+                    if (line.startsWith("+")) added.add(line.substring(1));
+                    else if (line.startsWith("?")) deleting.add(line.substring(1));
+                    else if (line.startsWith("-")) deleted.add(line.substring(1));
+                }
+            }
+            child.waitFor();
+            check(label + ": writer made progress", added.size() > 100);
+
+            Set<String> replayed = replay(file, format);
+            Set<String> missing = new TreeSet<>();
+            // A delete issued but not acknowledged may or may not have reached the log.
+            for (String id : added) if (!deleting.contains(id) && !replayed.contains(id)) missing.add(id);
+            Set<String> resurrected = new TreeSet<>();
+            for (String id : deleted) if (replayed.contains(id)) resurrected.add(id);
+            check(label + ": acknowledged adds survive, missing " + missing, missing.isEmpty());
+            check(label + ": acknowledged deletes survive, resurrected " + resurrected, resurrected.isEmpty());
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    private static void writer(Path file, String format) throws IOException {
+        ReservationStore store = new ReservationStore(file, null, ReservationFormat.named(format));
+        for (int i = 0; ; i++) {
+            String id = "K" + i;
+            store.add(reservation(id, "owner" + (i % 50)));
+            System.out.println("+" + id);
+            if (i % 4 == 3) {
+                String old = "K" + (i - 2);
+                System.out.println("?" + old);
+                store.delete(old);
+                System.out.println("-" + old);
+            }
+            System.out.flush();
+        }
+    }
+
+    // Cuts a copy of a good log at every byte of its last records, as a crash mid-append would.
+    // Replay must keep every record before the cut and leave a file that takes new appends.
+    private static void cutTail(String format) throws Exception {
+        String label = format + " cut tail";
+        Path dir = Files.createTempDirectory("store-faults");
+        Path file = dir.resolve("reservations");
+        try {
+            ReservationStore store = new ReservationStore(file, null, ReservationFormat.named(format));
+            int records = 50;
+            for (int i = 0; i < records; i++) store.add(reservation("C" + i, "owner" + (i % 7)));
+            byte[] full = Files.readAllBytes(file);
+            int bad = 0;
+            for (int cut = full.length - 150; cut < full.length; cut++) {
+                Path copy = dir.resolve("cut-" + cut);
+                Files.write(copy, java.util.Arrays.copyOf(full, cut));
+                Set<String> replayed = replay(copy, format);
+                int kept = replayed.size();
+                boolean prefix = kept >= records - 5;
+                for (int i = 0; i < kept; i++) prefix &= replayed.contains("C" + i);
+                ReservationStore reopened = new ReservationStore(copy, null, ReservationFormat.named(format));
+                reopened.add(reservation("NEW", "newowner"));
+                Set<String> after = replay(copy, format);
+                if (!prefix || after.size() != kept + 1 || !after.contains("NEW")) {
+                    bad++;
+                    System.out.println("  cut at " + cut + ": kept " + kept + ", after append " + after.size());
+                }
+            }
+            check(label + ": every cut replays to an intact prefix and accepts appends", bad == 0);
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // A damaged record followed by intact ones is not a torn tail: the store must refuse to start
+    // rather than discard the good records after it.
+    private static void damagedMiddle() throws Exception {
+        String label = "binary damaged middle";
+        Path dir = Files.createTempDirectory("store-faults");
+        Path file = dir.resolve("reservations");
+        try {
+            ReservationStore store = new ReservationStore(file, null, ReservationFormat.named("binary"));
+            for (int i = 0; i < 30; i++) store.add(reservation("D" + i, "owner"));
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length / 3] ^= 0x55;
+            Path damaged = dir.resolve("damaged");
+            Files.write(damaged, bytes);
+            check(label + ": replay refuses", throwsIo(() -> new ReservationStore(damaged, null, new BinaryReservationFormat()).ensureExists()));
+            check(label + ": file left as it was", Files.size(damaged) == bytes.length);
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    private static Set<String> replay(Path file, String format) throws IOException {
+        Set<String> ids = new TreeSet<>();
+        for (Reservation r : new ReservationStore(file, null, ReservationFormat.named(format)).listAll()) ids.add(r.reservationNumber);
+        return ids;
+    }
+
+    private static Reservation reservation(String id, String owner) {
+        LocalDate checkIn = LocalDate.of(2030, 1, 1).plusDays(Math.abs(id.hashCode()) % 300);
+        return new Reservation(id, owner, "Guest " + id, "1 Beach Road", "0771234567", "DELUXE", checkIn, checkIn.plusDays(2));
+    }
+
+    private static boolean throwsIo(Action action) {
+        try {
+            action.run();
+            return false;
+        } catch (IOException e) {
+            return true;
+        } catch (Exception e) {
+            return e.getCause() instanceof IOException;
+        }
+    }
+
+    private static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) failures++;
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+    }
+
+    private static void deleteDir(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> f.toFile().delete());
+        }
+        Files.deleteIfExists(dir);
+    }
+}
@@ -0,0 +1,152 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+// Concurrency stress check for the striped-lock store: many threads add, update and delete over a
+// small key space (so stripes collide) while the log is compacted in the background. Afterwards
+// the in-memory index, the sorted index and a fresh replay of the log must all agree record for
+// record. Exits non-zero on any mismatch.
+//
+//   javac -d out src/*.java bench/*.java
+//   java -cp out StoreStress --threads=16 --ops=20000 --format=binary
+public class StoreStress {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        int ops = Integer.parseInt(options.getOrDefault("ops", "20000"));
+        int keys = Integer.parseInt(options.getOrDefault("keys", "500"));
+        boolean ok = true;
+        for (String format : options.getOrDefault("format", "text,binary").split(",")) {
+            ok &= run(format.trim(), threads, ops, keys);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean run(String format, int threads, int ops, int keys) throws Exception {
+        Path dir = Files.createTempDirectory("store-stress");
+        Path file = dir.resolve("reservations");
+        try {
+            ReservationStore store = new ReservationStore(file, null, ReservationFormat.named(format));
+            store.durability(Durability.NONE);
+            AtomicInteger added = new AtomicInteger();
+            AtomicInteger updated = new AtomicInteger();
+            AtomicInteger deleted = new AtomicInteger();
+            AtomicInteger compactions = new AtomicInteger();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        for (int i = 0; i < ops; i++) {
+                            String id = "R" + random.nextInt(keys);
+                            // Losing a race to another thread is expected; it surfaces as these errors.
+                            try {
+                                switch (random.nextInt(3)) {
+                                    case 0:
+                                        store.add(reservation(id, random));
+                                        added.incrementAndGet();
+                                        break;
+                                    case 1:
+                                        store.update(reservation(id, random));
+                                        updated.incrementAndGet();
+                                        break;
+                                    default:
+                                        store.delete(id);
+                                        deleted.incrementAndGet();
+                                }
+                            } catch (IllegalArgumentException expected) {
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }, "stress-" + t);
+            }
+            Thread compactor = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        if (store.compact() != null) compactions.incrementAndGet();
+                        Thread.sleep(20);
+                    }
+                } catch (InterruptedException ignored) {
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "stress-compactor");
+
+            long started = System.nanoTime();
+            for (Thread w : workers) w.start();
+            compactor.start();
+            for (Thread w : workers) w.join();
+            compactor.interrupt();
+            compactor.join();
+            long millis = (System.nanoTime() - started) / 1_000_000L;
+            if (failure.get() != null) throw new IllegalStateException("Worker failed", failure.get());
+
+            List<Reservation> listed = store.listAll();
+            Map<String, Reservation> live = new HashMap<>();
+            for (Reservation r : listed) live.put(r.reservationNumber, r);
+            Map<String, Reservation> replayed = new HashMap<>();
+            for (Reservation r : new ReservationStore(file, null, ReservationFormat.named(format)).listAll()) replayed.put(r.reservationNumber, r);
+
+            int mismatches = 0;
+            if (live.size() != listed.size()) {
+                System.out.println("  sorted index holds duplicates: " + listed.size() + " rows for " + live.size() + " numbers");
+                mismatches++;
+            }
+            if (store.liveRecords() != live.size()) {
+                System.out.println("  index holds " + store.liveRecords() + " records, sorted index " + live.size());
+                mismatches++;
+            }
+            for (int k = 0; k < keys; k++) {
+                String id = "R" + k;
+                Reservation inIndex = store.find(id);
+                if (!same(inIndex, live.get(id)) || !same(inIndex, replayed.get(id))) {
+                    if (mismatches < 10) {
+                        System.out.println("  " + id + ": index " + describe(inIndex) + ", sorted " + describe(live.get(id))
+                                + ", replay " + describe(replayed.get(id)));
+                    }
+                    mismatches++;
+                }
+            }
+            System.out.println(String.format("%-6s threads=%d ops=%d: %d adds, %d updates, %d deletes, %d compactions in %d ms; %d live, %s",
+                    format, threads, threads * ops, added.get(), updated.get(), deleted.get(), compactions.get(), millis,
+                    live.size(), mismatches == 0 ? "index matches replay" : mismatches + " MISMATCHES"));
+            return mismatches == 0;
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(f -> f.toFile().delete());
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static Reservation reservation(String id, ThreadLocalRandom random) {
+        LocalDate checkIn = LocalDate.of(2030, 1, 1).plusDays(random.nextInt(365));
+        return new Reservation(id, "owner" + random.nextInt(20), "Guest " + random.nextInt(1000), "1 Beach Road",
+                "077" + random.nextInt(10_000_000), "DELUXE", checkIn, checkIn.plusDays(1 + random.nextInt(7)));
+    }
+
+    private static boolean same(Reservation a, Reservation b) {
+        if (a == null || b == null) return a == b;
+        return a.reservationNumber.equals(b.reservationNumber) && a.ownerUsername.equals(b.ownerUsername)
+                && a.guestName.equals(b.guestName) && a.address.equals(b.address) && a.contactNumber.equals(b.contactNumber)
+                && a.roomType.equals(b.roomType) && a.checkIn.equals(b.checkIn) && a.checkOut.equals(b.checkOut);
+    }
+
+    private static String describe(Reservation r) {
+        return r == null ? "absent" : r.guestName + " " + r.checkIn + ".." + r.checkOut;
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Everything under public/ with validators, refreshed by a WatchService when files change on disk.
+// Files up to maxCachedBytes are held in memory with a gzip variant; larger ones stay on disk.
+public class AssetCache {
+    public static final class Asset {
+        public final Path path;
+        public final long size;
+        public final String contentType;
+        // null for files above the heap threshold; those are memory-mapped from path per request.
+        public final byte[] body;
+        // null when compressing would not make the file smaller.
+        public final byte[] gzipBody;
+        public final String etag;
+        public final String gzipEtag;
+        public final Instant lastModified;
+
+        Asset(Path path, long size, String contentType, byte[] body, byte[] gzipBody, String etag, Instant lastModified) {
+            this.path = path;
+            this.size = size;
+            this.contentType = contentType;
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.etag = etag;
+            this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gz\"";
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final Path root;
+    private final long maxCachedBytes;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchKeys = new ConcurrentHashMap<>();
+    private WatchService watcher;
+
+    public AssetCache(Path root, long maxCachedBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxCachedBytes = maxCachedBytes;
+    }
+
+    public void load() throws IOException {
+        if (!Files.isDirectory(root)) return;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(p)) refresh(p);
+            }
+        }
+    }
+
+    public Asset get(String relativePath) {
+        return assets.get(relativePath);
+    }
+
+    public void startWatching() throws IOException {
+        if (!Files.isDirectory(root)) return;
+        watcher = FileSystems.getDefault().newWatchService();
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path d : (Iterable<Path>) dirs::iterator) {
+                if (Files.isDirectory(d)) register(d);
+            }
+        }
+        Thread t = new Thread(this::watchLoop, "asset-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void stopWatching() throws IOException {
+        if (watcher != null) watcher.close();
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watchKeys.put(dir, key);
+    }
+
+    // p is gone: drop it, and if it was a directory everything cached or watched under it.
+    private void removed(Path p) {
+        String rel = relative(p);
+        assets.remove(rel);
+        String prefix = rel + "/";
+        assets.keySet().removeIf(k -> k.startsWith(prefix));
+        watchKeys.entrySet().removeIf(e -> {
+            if (!e.getKey().startsWith(p)) return false;
+            e.getValue().cancel();
+            return true;
+        });
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    try {
+                        load();
+                    } catch (IOException e) {
+                        System.err.println("Could not reload static assets: " + e.getMessage());
+                    }
+                    continue;
+                }
+                Path p = dir.resolve((Path) event.context());
+                try {
+                    if (Files.isDirectory(p)) {
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) register(p);
+                    } else if (Files.isRegularFile(p)) {
+                        refresh(p);
+                    } else {
+                        removed(p);
+                    }
+                } catch (IOException e) {
+                    removed(p);
+                }
+            }
+            if (!key.reset()) watchKeys.remove(dir, key);
+        }
+    }
+
+    private void refresh(Path p) throws IOException {
+        String contentType = contentType(p.getFileName().toString());
+        Instant modified = Files.getLastModifiedTime(p).toInstant();
+        long size = Files.size(p);
+        if (size > maxCachedBytes) {
+            // Hashing would mean reading the whole file; size plus mtime changes whenever it does.
+            String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified.toEpochMilli()) + "\"";
+            assets.put(relative(p), new Asset(p, size, contentType, null, null, etag, modified));
+            return;
+        }
+        byte[] body = Files.readAllBytes(p);
+        byte[] gzip = compressible(contentType) ? gzip(body) : null;
+        if (gzip != null && gzip.length >= body.length) gzip = null;
+        assets.put(relative(p), new Asset(p, body.length, contentType, body, gzip, RateTable.etagFor(body), modified));
+    }
+
+    private String relative(Path p) {
+        return root.relativize(p.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(body.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bout)) {
+            gz.write(body);
+        }
+        return bout.toByteArray();
+    }
+
+    private static boolean compressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json") || contentType.startsWith("image/svg+xml");
+    }
+
+    static String contentType(String name) {
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".html")) return "text/html; charset=utf-8";
+        if (lower.endsWith(".css")) return "text/css; charset=utf-8";
+        if (lower.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (lower.endsWith(".png")) return "image/png";
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) return "image/jpeg";
+        if (lower.endsWith(".svg")) return "image/svg+xml";
+        return "application/octet-stream";
+    }
+}
@@ -6,15 +6,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.SecureRandom;
 import java.util.Base64;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class AuthService {
     private final Path usersFile;
+    private volatile Durability durability = Durability.BATCH;
     private final SecureRandom random = new SecureRandom();
-    private final Map<String, Session> sessions = new HashMap<>();
+    private final SessionTable sessions = SessionTable.fromSystemProperties();
+    // Parsed users.txt, replaced wholesale whenever the file is rewritten.
+    private volatile Map<String, StoredUser> users;
 
     public enum Role {
         ADMIN,
@@ -24,10 +26,24 @@ public class AuthService {
     public static final class Session {
         public final String username;
         public final Role role;
+        public final long createdAtMillis;
+        private volatile long lastAccessMillis;
+        volatile int slot;
 
         public Session(String username, Role role) {
             this.username = username;
             this.role = role;
+            this.createdAtMillis = System.currentTimeMillis();
+            this.lastAccessMillis = createdAtMillis;
+        }
+
+        public long lastAccessMillis() {
+            return lastAccessMillis;
+        }
+
+        void touch(long now) {
+            // Skip the volatile write for requests landing in the same second.
+            if (now - lastAccessMillis >= 1000L) lastAccessMillis = now;
         }
     }
 
@@ -35,6 +51,14 @@ public class AuthService {
         this.usersFile = usersFile;
     }
 
+    public void durability(Durability durability) {
+        this.durability = durability;
+    }
+
+    public void startSessionSweeper() {
+        sessions.startSweeper();
+    }
+
     public synchronized void ensureUsersFile() throws IOException {
         if (usersFile.getParent() != null) Files.createDirectories(usersFile.getParent());
         if (!Files.exists(usersFile)) {
@@ -56,7 +80,10 @@ public class AuthService {
             }
         }
 
-        if (hasAdmin && hasCustomer) return;
+        if (hasAdmin && hasCustomer) {
+            if (users == null) users = loadUsers();
+            return;
+        }
 
         try (BufferedWriter w = Files.newBufferedWriter(
                 usersFile,
@@ -72,32 +99,51 @@ public class AuthService {
                 w.newLine();
             }
         }
+        users = loadUsers();
     }
 
-    public synchronized String login(String username, String password) throws IOException {
-        ensureUsersFile();
-        Session user = findUser(username, password);
-        if (user == null) {
-            throw new IllegalArgumentException("Invalid username or password");
+    public String login(String username, String password) throws IOException {
+        ResortEvents.Login event = new ResortEvents.Login();
+        event.begin();
+        event.username = username;
+        try {
+            Session user = findUser(username, password);
+            if (user == null) {
+                throw new IllegalArgumentException("Invalid username or password");
+            }
+            String token = newToken();
+            sessions.put(token, user);
+            // deleteUser publishes the new user map before it revokes sessions, so a login that
+            // lost the race sees the user gone here and withdraws the session it just added.
+            if (!users().containsKey(username)) {
+                sessions.remove(token);
+                throw new IllegalArgumentException("Invalid username or password");
+            }
+            event.succeeded = true;
+            return token;
+        } finally {
+            event.commit();
         }
-        String token = newToken();
-        sessions.put(token, user);
-        return token;
     }
 
-    public synchronized void logout(String token) {
+    public void logout(String token) {
         if (token == null) return;
         sessions.remove(token);
     }
 
-    public synchronized Session requireSession(String token) {
+    public Session requireSession(String token) {
         if (token == null) throw new IllegalArgumentException("Not logged in");
+        ResortEvents.SessionCheck event = new ResortEvents.SessionCheck();
+        event.begin();
         Session s = sessions.get(token);
+        event.valid = s != null;
+        if (s != null) event.username = s.username;
+        event.commit();
         if (s == null) throw new IllegalArgumentException("Session expired. Please login again.");
         return s;
     }
 
-    public synchronized void requireAdmin(String token) {
+    public void requireAdmin(String token) {
         Session s = requireSession(token);
         if (s.role != Role.ADMIN) throw new IllegalArgumentException("Forbidden");
     }
@@ -112,10 +158,9 @@ public class AuthService {
         }
     }
 
-    public synchronized List<UserRecord> listUsers() throws IOException {
-        ensureUsersFile();
+    public List<UserRecord> listUsers() throws IOException {
         List<UserRecord> out = new java.util.ArrayList<>();
-        for (Map.Entry<String, StoredUser> e : loadUsers().entrySet()) {
+        for (Map.Entry<String, StoredUser> e : users().entrySet()) {
             out.add(new UserRecord(e.getKey(), e.getValue().role));
         }
         return out;
@@ -127,25 +172,20 @@ public class AuthService {
         if (password == null || password.trim().isEmpty()) throw new IllegalArgumentException("Password is required");
         if (role == null) role = Role.CUSTOMER;
 
-        Map<String, StoredUser> all = loadUsers();
+        Map<String, StoredUser> all = new LinkedHashMap<>(users());
         all.put(username.trim(), new StoredUser(password, role));
         writeUsers(all);
+        users = all;
     }
 
     public synchronized void deleteUser(String username) throws IOException {
         ensureUsersFile();
         if (username == null || username.trim().isEmpty()) throw new IllegalArgumentException("Username is required");
-        Map<String, StoredUser> all = loadUsers();
+        Map<String, StoredUser> all = new LinkedHashMap<>(users());
         if (all.remove(username.trim()) == null) throw new IllegalArgumentException("User not found");
         writeUsers(all);
-
-        List<String> tokensToRemove = new java.util.ArrayList<>();
-        for (Map.Entry<String, Session> e : sessions.entrySet()) {
-            if (e.getValue() != null && username.trim().equals(e.getValue().username)) {
-                tokensToRemove.add(e.getKey());
-            }
-        }
-        for (String t : tokensToRemove) sessions.remove(t);
+        users = all;
+        sessions.revokeUser(username.trim());
     }
 
     private static final class StoredUser {
@@ -185,45 +225,33 @@ public class AuthService {
         return map;
     }
 
+    // The users file is rewritten whole on every change, via a temp file and an atomic rename so a
+    // crash never leaves it half written.
     private void writeUsers(Map<String, StoredUser> users) throws IOException {
-        try (BufferedWriter w = Files.newBufferedWriter(usersFile, StandardCharsets.UTF_8)) {
-            for (Map.Entry<String, StoredUser> e : users.entrySet()) {
-                String u = e.getKey();
-                StoredUser su = e.getValue();
-                if (u == null || u.trim().isEmpty() || su == null) continue;
-                w.write(u.trim() + ":" + (su.password == null ? "" : su.password) + ":" + (su.role == null ? Role.CUSTOMER.name() : su.role.name()));
-                w.newLine();
-            }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, StoredUser> e : users.entrySet()) {
+            String u = e.getKey();
+            StoredUser su = e.getValue();
+            if (u == null || u.trim().isEmpty() || su == null) continue;
+            sb.append(u.trim()).append(':').append(su.password == null ? "" : su.password).append(':')
+                    .append(su.role == null ? Role.CUSTOMER.name() : su.role.name()).append(System.lineSeparator());
         }
+        durability.replace(usersFile, sb.toString().getBytes(StandardCharsets.UTF_8));
     }
 
-    private Session findUser(String username, String password) throws IOException {
-        try (BufferedReader r = Files.newBufferedReader(usersFile, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = r.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                String[] parts = line.split(":", 3);
-                if (parts.length < 2) continue;
-
-                String u = parts[0];
-                String p = parts[1];
-                if (!u.equals(username) || !p.equals(password)) continue;
-
-                Role role = Role.CUSTOMER;
-                if (parts.length >= 3) {
-                    try {
-                        role = Role.valueOf(parts[2].trim().toUpperCase());
-                    } catch (IllegalArgumentException ignored) {
-                        role = Role.CUSTOMER;
-                    }
-                } else {
-                    if ("admin".equalsIgnoreCase(u)) role = Role.ADMIN;
-                }
-                return new Session(u, role);
-            }
+    private Map<String, StoredUser> users() throws IOException {
+        Map<String, StoredUser> current = users;
+        if (current != null) return current;
+        synchronized (this) {
+            if (users == null) ensureUsersFile();
+            return users;
         }
-        return null;
+    }
+
+    private Session findUser(String username, String password) throws IOException {
+        StoredUser su = users().get(username);
+        if (su == null || su.password == null || !su.password.equals(password)) return null;
+        return new Session(username, su.role == null ? Role.CUSTOMER : su.role);
     }
 
     private String newToken() {
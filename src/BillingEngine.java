@@ -0,0 +1,64 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class BillingEngine {
+    public static final class Bill {
+        public final Reservation reservation;
+        public final long nights;
+        public final int ratePerNight;
+        public final long total;
+
+        public Bill(Reservation reservation, long nights, int ratePerNight, long total) {
+            this.reservation = reservation;
+            this.nights = nights;
+            this.ratePerNight = ratePerNight;
+            this.total = total;
+        }
+
+        public long averageRatePerNight() {
+            return nights == 0 ? 0 : Math.round((double) total / nights);
+        }
+    }
+
+    public static Bill bill(Reservation r) {
+        return bill(RoomRates.current(), r);
+    }
+
+    public static Bill bill(RateTable rates, Reservation r) {
+        RateTable.TypeRates t = rates.type(r.roomType);
+        long nights = ChronoUnit.DAYS.between(r.checkIn, r.checkOut);
+        return new Bill(r, nights, t.baseRate, t.stayTotal(r.checkIn, r.checkOut));
+    }
+
+    public static boolean isActive(Reservation r, LocalDate date) {
+        return !r.checkIn.isAfter(date) && r.checkOut.isAfter(date);
+    }
+
+    public static final class ActiveBills {
+        public final List<Bill> bills;
+        // In house but with a room type the rate table does not price.
+        public final List<Reservation> unbilled;
+
+        public ActiveBills(List<Bill> bills, List<Reservation> unbilled) {
+            this.bills = bills;
+            this.unbilled = unbilled;
+        }
+    }
+
+    // End-of-day run: bills every reservation in house on the given night, spread over the
+    // common fork-join pool. All bills use the same rate table even if it reloads mid-run.
+    public static ActiveBills billActive(Collection<Reservation> reservations, LocalDate date) {
+        RateTable rates = RoomRates.current();
+        Map<Boolean, List<Reservation>> priced = reservations.parallelStream()
+                .filter(r -> isActive(r, date))
+                .collect(Collectors.partitioningBy(r -> rates.types().containsKey(r.roomType)));
+        List<Bill> bills = priced.get(true).parallelStream()
+                .map(r -> bill(rates, r))
+                .collect(Collectors.toList());
+        return new ActiveBills(bills, priced.get(false));
+    }
+}
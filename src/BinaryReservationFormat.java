@@ -0,0 +1,304 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Compact binary log. After the 4-byte magic every record is
+//   type:u8  length:i32  payload  crc32(type, payload):i32
+// Strings are varint-length-prefixed UTF-8, dates are epoch-day i32s, room types are
+// ordinals into ROOM_TYPES, and owner usernames are ids into a per-file dictionary
+// whose entries are written as DICT records ahead of their first use.
+public class BinaryReservationFormat implements ReservationFormat {
+    static final byte[] MAGIC = {'O', 'R', 'B', '1'};
+    static final int DICT = 1;
+    static final int UPSERT = 2;
+    static final int TOMBSTONE = 3;
+    // Ordinals are persisted: only ever append to this list.
+    private static final String[] ROOM_TYPES = {"STANDARD", "DELUXE", "SUITE"};
+    private static final int OTHER_ROOM_TYPE = 255;
+
+    static final class BinaryEncoder implements Encoder {
+        private final Map<String, Integer> ownerIds;
+        private final List<String> owners;
+        private int markedOwners;
+
+        BinaryEncoder(Map<String, Integer> ownerIds, List<String> owners) {
+            this.ownerIds = ownerIds;
+            this.owners = owners;
+            this.markedOwners = owners.size();
+        }
+
+        @Override
+        public synchronized byte[] preamble() {
+            Buffer out = new Buffer();
+            out.write(MAGIC, 0, MAGIC.length);
+            for (int id = 0; id < owners.size(); id++) writeDict(out, id, owners.get(id));
+            return out.toByteArray();
+        }
+
+        @Override
+        public synchronized byte[] upsert(Reservation r) {
+            Buffer out = new Buffer();
+            String owner = r.ownerUsername == null ? "" : r.ownerUsername;
+            Integer ownerId = ownerIds.get(owner);
+            if (ownerId == null) {
+                ownerId = owners.size();
+                owners.add(owner);
+                ownerIds.put(owner, ownerId);
+                writeDict(out, ownerId, owner);
+            }
+
+            Buffer p = new Buffer();
+            p.writeString(r.reservationNumber);
+            p.writeVarint(ownerId);
+            p.writeString(r.guestName);
+            p.writeString(r.address);
+            p.writeString(r.contactNumber);
+            int ordinal = roomTypeOrdinal(r.roomType);
+            p.write(ordinal);
+            if (ordinal == OTHER_ROOM_TYPE) p.writeString(r.roomType);
+            p.writeInt((int) r.checkIn.toEpochDay());
+            p.writeInt((int) r.checkOut.toEpochDay());
+            writeRecord(out, UPSERT, p);
+            return out.toByteArray();
+        }
+
+        @Override
+        public synchronized byte[] tombstone(String reservationNumber) {
+            Buffer out = new Buffer();
+            Buffer p = new Buffer();
+            p.writeString(reservationNumber);
+            writeRecord(out, TOMBSTONE, p);
+            return out.toByteArray();
+        }
+
+        @Override
+        public synchronized void mark() {
+            markedOwners = owners.size();
+        }
+
+        @Override
+        public synchronized void abort() {
+            while (owners.size() > markedOwners) ownerIds.remove(owners.remove(owners.size() - 1));
+        }
+
+        @Override
+        public synchronized Encoder copy() {
+            return new BinaryEncoder(new HashMap<>(ownerIds), new ArrayList<>(owners));
+        }
+
+        private static void writeDict(Buffer out, int id, String owner) {
+            Buffer p = new Buffer();
+            p.writeVarint(id);
+            p.writeString(owner);
+            writeRecord(out, DICT, p);
+        }
+
+        private static void writeRecord(Buffer out, int type, Buffer payload) {
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload.array(), 0, payload.size());
+            out.write(type);
+            out.writeInt(payload.size());
+            out.write(payload.array(), 0, payload.size());
+            out.writeInt((int) crc.getValue());
+        }
+    }
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public Encoder newEncoder() {
+        return new BinaryEncoder(new HashMap<>(), new ArrayList<>());
+    }
+
+    // Stops at the first record that is cut short or fails its checksum. That is only a torn tail
+    // if no intact record follows it; damage in the middle of the file fails the replay instead,
+    // so the records after it are not thrown away with the tail.
+    @Override
+    public Encoder replay(InputStream in, RecordVisitor visitor) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        Map<String, Integer> ownerIds = new HashMap<>();
+        List<String> owners = new ArrayList<>();
+        byte[] magic = new byte[MAGIC.length];
+        int n = data.readNBytes(magic, 0, magic.length);
+        if (n == 0) {
+            visitor.end(0);
+            return new BinaryEncoder(ownerIds, owners);
+        }
+        if (n < MAGIC.length && java.util.Arrays.equals(magic, 0, n, MAGIC, 0, n)) {
+            // Crashed while writing the header of a new file.
+            visitor.end(0);
+            return new BinaryEncoder(ownerIds, owners);
+        }
+        if (n < MAGIC.length || !java.util.Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary reservation file");
+        }
+
+        long valid = MAGIC.length;
+        while (true) {
+            int type = data.read();
+            if (type < 0) break;
+            byte[] payload;
+            int storedCrc;
+            try {
+                int length = data.readInt();
+                if (length < 0 || length > (1 << 24)) {
+                    checkTail(valid, concat(intBytes(length), data.readAllBytes()));
+                    break;
+                }
+                payload = data.readNBytes(length);
+                if (payload.length < length) break;
+                storedCrc = data.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != storedCrc) {
+                checkTail(valid, concat(intBytes(payload.length), payload, intBytes(storedCrc), data.readAllBytes()));
+                break;
+            }
+            valid += 1 + 4 + payload.length + 4;
+
+            Cursor c = new Cursor(payload);
+            if (type == DICT) {
+                int id = c.readVarint();
+                String owner = c.readString();
+                while (owners.size() <= id) owners.add(null);
+                owners.set(id, owner);
+                ownerIds.put(owner, id);
+            } else if (type == UPSERT) {
+                String number = c.readString();
+                int ownerId = c.readVarint();
+                String owner = ownerId < owners.size() && owners.get(ownerId) != null ? owners.get(ownerId) : "";
+                String guestName = c.readString();
+                String address = c.readString();
+                String contactNumber = c.readString();
+                int ordinal = c.readByte();
+                String roomType = ordinal == OTHER_ROOM_TYPE ? c.readString() : ROOM_TYPES[ordinal];
+                LocalDate checkIn = LocalDate.ofEpochDay(c.readInt());
+                LocalDate checkOut = LocalDate.ofEpochDay(c.readInt());
+                visitor.upsert(new Reservation(number, owner, guestName, address, contactNumber, roomType, checkIn, checkOut));
+            } else if (type == TOMBSTONE) {
+                visitor.tombstone(c.readString());
+            }
+        }
+        visitor.end(valid);
+        return new BinaryEncoder(ownerIds, owners);
+    }
+
+    // rest is everything after the first byte of the bad record at offset.
+    private static void checkTail(long offset, byte[] rest) throws IOException {
+        for (int i = 0; i + 9 <= rest.length; i++) {
+            int type = rest[i];
+            if (type != DICT && type != UPSERT && type != TOMBSTONE) continue;
+            int length = readInt(rest, i + 1);
+            if (length < 0 || length > rest.length - i - 9) continue;
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(rest, i + 5, length);
+            if ((int) crc.getValue() == readInt(rest, i + 5 + length)) {
+                throw new IOException("Damaged record at byte " + offset + " of the reservation log is followed by intact records at byte "
+                        + (offset + 1 + i) + "; restore the file from a backup or cut out the damaged bytes");
+            }
+        }
+    }
+
+    private static int readInt(byte[] b, int at) {
+        return ((b[at] & 0xff) << 24) | ((b[at + 1] & 0xff) << 16) | ((b[at + 2] & 0xff) << 8) | (b[at + 3] & 0xff);
+    }
+
+    private static byte[] intBytes(int v) {
+        return new byte[]{(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v};
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.writeBytes(p);
+        return out.toByteArray();
+    }
+
+    private static int roomTypeOrdinal(String roomType) {
+        for (int i = 0; i < ROOM_TYPES.length; i++) {
+            if (ROOM_TYPES[i].equals(roomType)) return i;
+        }
+        return OTHER_ROOM_TYPE;
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+
+        void writeInt(int v) {
+            write(v >>> 24);
+            write(v >>> 16);
+            write(v >>> 8);
+            write(v);
+        }
+
+        void writeVarint(int v) {
+            while ((v & ~0x7f) != 0) {
+                write((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+
+        void writeString(String s) {
+            byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Cursor {
+        private final byte[] b;
+        private int pos;
+
+        Cursor(byte[] b) {
+            this.b = b;
+        }
+
+        int readByte() {
+            return b[pos++] & 0xff;
+        }
+
+        int readInt() {
+            int v = ((b[pos] & 0xff) << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8) | (b[pos + 3] & 0xff);
+            pos += 4;
+            return v;
+        }
+
+        int readVarint() {
+            int v = 0;
+            int shift = 0;
+            while (true) {
+                int x = readByte();
+                v |= (x & 0x7f) << shift;
+                if ((x & 0x80) == 0) return v;
+                shift += 7;
+            }
+        }
+
+        String readString() {
+            int len = readVarint();
+            String s = new String(b, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
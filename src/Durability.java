@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// How far a store pushes its writes towards the disk before reporting success.
+public enum Durability {
+    // Written to the OS page cache only; a power cut can lose recent changes.
+    NONE,
+    // Forced once per group of concurrent writes (see ReservationStore group commit).
+    BATCH,
+    // Every record forced on its own, file metadata included.
+    ALWAYS;
+
+    public static Durability named(String name) {
+        if (name == null || name.trim().isEmpty()) return BATCH;
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Durability must be none, batch or always");
+        }
+    }
+
+    public void force(FileChannel channel) throws IOException {
+        if (this != NONE) channel.force(this == ALWAYS);
+    }
+
+    // Replaces target with content so that a crash leaves either the old file or the new one:
+    // write a temp file beside it, force it, rename over the target, then force the directory.
+    public void replace(Path target, byte[] content) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(content);
+                while (buf.hasRemaining()) ch.write(buf);
+                force(ch);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory(dir);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Makes a rename or file creation in dir survive a crash. Some platforms (Windows) cannot open
+    // a directory for this, in which case the rename is left to the file system.
+    public void forceDirectory(Path dir) {
+        if (this == NONE) return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
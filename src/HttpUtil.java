@@ -4,7 +4,11 @@ import com.sun.net.httpserver.HttpExchange;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class HttpUtil {
     public static String readBody(HttpExchange ex) throws IOException {
@@ -19,6 +23,19 @@ public class HttpUtil {
         }
     }
 
+    // JsonUtil.readFields over the request body, with the reader's buffer sized from Content-Length.
+    public static Map<String, String> readJsonFields(HttpExchange ex, String... names) throws IOException {
+        long length = -1;
+        String header = ex.getRequestHeaders().getFirst("Content-Length");
+        if (header != null) {
+            try {
+                length = Long.parseLong(header.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return JsonUtil.readFields(new JsonReader(ex.getRequestBody(), length), names);
+    }
+
     public static void sendJson(HttpExchange ex, int status, String json) throws IOException {
         byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
         Headers h = ex.getResponseHeaders();
@@ -30,6 +47,71 @@ public class HttpUtil {
         ex.close();
     }
 
+    public interface JsonBody {
+        void write(JsonWriter w) throws IOException;
+    }
+
+    // Length is unknown up front, so the body goes out chunked as the writer fills its buffer.
+    public static void sendJsonStream(HttpExchange ex, int status, JsonBody body) throws IOException {
+        Headers h = ex.getResponseHeaders();
+        h.set("Content-Type", "application/json; charset=utf-8");
+        h.set("Cache-Control", "no-store");
+        addCors(ex);
+        ex.sendResponseHeaders(status, 0);
+        try (JsonWriter w = new JsonWriter(ex.getResponseBody())) {
+            body.write(w);
+        } finally {
+            ex.close();
+        }
+    }
+
+    public interface StreamBody {
+        void write(OutputStream out) throws IOException;
+    }
+
+    // Chunked download of a non-JSON body such as CSV or NDJSON.
+    public static void sendStream(HttpExchange ex, String contentType, String fileName, StreamBody body) throws IOException {
+        Headers h = ex.getResponseHeaders();
+        h.set("Content-Type", contentType);
+        h.set("Cache-Control", "no-store");
+        if (fileName != null) h.set("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        addCors(ex);
+        ex.sendResponseHeaders(200, 0);
+        try (OutputStream out = ex.getResponseBody()) {
+            body.write(out);
+        } finally {
+            ex.close();
+        }
+    }
+
+    // For bodies serialised ahead of time: clients revalidate with If-None-Match and get a 304.
+    public static void sendCachedJson(HttpExchange ex, byte[] body, String etag) throws IOException {
+        Headers h = ex.getResponseHeaders();
+        h.set("Content-Type", "application/json; charset=utf-8");
+        h.set("Cache-Control", "no-cache");
+        h.set("ETag", etag);
+        addCors(ex);
+        if (etagMatches(ex.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+        ex.sendResponseHeaders(200, body.length);
+        ex.getResponseBody().write(body);
+        ex.close();
+    }
+
+    public static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) return true;
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals(etag)) return true;
+        }
+        return false;
+    }
+
     public static void sendText(HttpExchange ex, int status, String text, String contentType) throws IOException {
         byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
         Headers h = ex.getResponseHeaders();
@@ -55,6 +137,20 @@ public class HttpUtil {
         return auth.substring("Bearer ".length()).trim();
     }
 
+    public static Map<String, String> queryParams(HttpExchange ex) {
+        Map<String, String> params = new LinkedHashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            String v = eq < 0 ? "" : pair.substring(eq + 1);
+            params.putIfAbsent(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
     public static boolean handleOptions(HttpExchange ex) throws IOException {
         if (!"OPTIONS".equalsIgnoreCase(ex.getRequestMethod())) return false;
         addCors(ex);
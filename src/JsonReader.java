@@ -0,0 +1,481 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Pull-style JSON tokenizer over a UTF-8 byte stream. Values that are not wanted can be
+// skipped with skipValue() without decoding them.
+public class JsonReader implements Closeable {
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private static final int MAX_BUFFER = 4096;
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+    private int[] stack = new int[16];
+    private int depth = 1;
+    private Token peeked;
+    // The last string or literal read: buf[rawStart, rawEnd) when it was plain ASCII lying wholly in
+    // the buffer (rawStart >= 0), otherwise decoded into chars, which is only allocated when needed.
+    private int rawStart = -1;
+    private int rawEnd;
+    private StringBuilder chars;
+
+    public JsonReader(InputStream in) {
+        this(in, MAX_BUFFER);
+    }
+
+    // expectedLength, e.g. the request's Content-Length, sizes the buffer so a small body does
+    // not pay for a 4 KB one; -1 if unknown.
+    public JsonReader(InputStream in, long expectedLength) {
+        this.in = in;
+        this.buf = new byte[expectedLength < 0 ? MAX_BUFFER : (int) Math.max(16, Math.min(MAX_BUFFER, expectedLength + 1))];
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    // Reads straight out of the array, without copying it.
+    public JsonReader(byte[] data) {
+        this.in = null;
+        this.buf = data;
+        this.limit = data.length;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked != null) return peeked;
+        int scope = stack[depth - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                if (c != ',') throw syntaxError("Expected ',' or ']'");
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') return peeked = Token.END_OBJECT;
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') throw syntaxError("Expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw syntaxError("Expected a field name");
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') throw syntaxError("Expected ':'");
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_DOCUMENT:
+                stack[0] = NONEMPTY_DOCUMENT;
+                c = read();
+                while (isWhitespace(c)) c = read();
+                if (c == -1) return peeked = Token.END_DOCUMENT;
+                break;
+            default:
+                c = read();
+                while (isWhitespace(c)) c = read();
+                if (c == -1) return peeked = Token.END_DOCUMENT;
+                throw syntaxError("Unexpected data after the document");
+        }
+
+        switch (c) {
+            case '{': return peeked = Token.BEGIN_OBJECT;
+            case '[': return peeked = Token.BEGIN_ARRAY;
+            case '"': return peeked = Token.STRING;
+            case 't':
+            case 'f':
+                pos--;
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character");
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        readStringInto();
+        return text();
+    }
+
+    // Matches the next field name against the candidates without allocating a String.
+    // Returns the candidate's index, or -1 if the name is not one of them.
+    public int nextName(String[] candidates) throws IOException {
+        expect(Token.NAME);
+        readStringInto();
+        for (int i = 0; i < candidates.length; i++) {
+            if (textEquals(candidates[i])) return i;
+        }
+        return -1;
+    }
+
+    // Strings are decoded; numbers and booleans are returned as their literal text.
+    public String nextString() throws IOException {
+        Token t = peek();
+        peeked = null;
+        switch (t) {
+            case STRING:
+                readStringInto();
+                return text();
+            case NUMBER:
+            case BOOLEAN:
+                readLiteralInto(t);
+                return text();
+            default:
+                throw syntaxError("Expected a string but was " + t);
+        }
+    }
+
+    public long nextLong() throws IOException {
+        String s = nextNumberText();
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            double d = Double.parseDouble(s);
+            if (d != (long) d) throw syntaxError("Expected a whole number but was " + s);
+            return (long) d;
+        }
+    }
+
+    public double nextDouble() throws IOException {
+        return Double.parseDouble(nextNumberText());
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        readLiteralInto(Token.BOOLEAN);
+        return textEquals("true");
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        readLiteralInto(Token.NULL);
+    }
+
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            Token t = peek();
+            peeked = null;
+            switch (t) {
+                case BEGIN_OBJECT:
+                    push(EMPTY_OBJECT);
+                    count++;
+                    break;
+                case BEGIN_ARRAY:
+                    push(EMPTY_ARRAY);
+                    count++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    count--;
+                    break;
+                case NAME:
+                case STRING:
+                    skipString();
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    readLiteralInto(t);
+                    break;
+                default:
+                    throw syntaxError("Unexpected end of input");
+            }
+        } while (count > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) in.close();
+    }
+
+    private String nextNumberText() throws IOException {
+        expect(Token.NUMBER);
+        readLiteralInto(Token.NUMBER);
+        return text();
+    }
+
+    private String text() {
+        if (rawStart < 0) return chars.toString();
+        return new String(buf, rawStart, rawEnd - rawStart, StandardCharsets.ISO_8859_1);
+    }
+
+    private int textLength() {
+        return rawStart < 0 ? chars.length() : rawEnd - rawStart;
+    }
+
+    private char textAt(int i) {
+        return rawStart < 0 ? chars.charAt(i) : (char) (buf[rawStart + i] & 0xff);
+    }
+
+    private boolean textEquals(String s) {
+        if (rawStart < 0) return s.contentEquals(chars);
+        int n = rawEnd - rawStart;
+        if (s.length() != n) return false;
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(i) != buf[rawStart + i]) return false;
+        }
+        return true;
+    }
+
+    private StringBuilder clearChars() {
+        rawStart = -1;
+        if (chars == null) chars = new StringBuilder(32);
+        chars.setLength(0);
+        return chars;
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token t = peek();
+        if (t != expected) throw syntaxError("Expected " + expected + " but was " + t);
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) stack = java.util.Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = scope;
+    }
+
+    private void readStringInto() throws IOException {
+        // Common case: printable ASCII up to the closing quote, all in the buffer. Bytes of 0x80 and
+        // up are negative here, so they fall back to the decoding loop along with escapes.
+        for (int i = pos; i < limit; i++) {
+            byte b = buf[i];
+            if (b == '"') {
+                rawStart = pos;
+                rawEnd = i;
+                pos = i + 1;
+                return;
+            }
+            if (b < 0x20 || b == '\\') break;
+        }
+        StringBuilder chars = clearChars();
+        while (true) {
+            int c = read();
+            if (c == -1) throw syntaxError("Unterminated string");
+            if (c == '"') return;
+            if (c < 0x20) throw syntaxError("Unescaped control character in string");
+            if (c == '\\') {
+                int esc = read();
+                switch (esc) {
+                    case 'n': chars.append('\n'); break;
+                    case 'r': chars.append('\r'); break;
+                    case 't': chars.append('\t'); break;
+                    case 'b': chars.append('\b'); break;
+                    case 'f': chars.append('\f'); break;
+                    case 'u': chars.append((char) readHex4()); break;
+                    case -1: throw syntaxError("Unterminated string");
+                    default: chars.append((char) esc);
+                }
+            } else if (c < 0x80) {
+                chars.append((char) c);
+            } else {
+                appendUtf8(c);
+            }
+        }
+    }
+
+    private void appendUtf8(int lead) throws IOException {
+        int extra;
+        int cp;
+        if ((lead & 0xe0) == 0xc0) {
+            extra = 1;
+            cp = lead & 0x1f;
+        } else if ((lead & 0xf0) == 0xe0) {
+            extra = 2;
+            cp = lead & 0x0f;
+        } else if ((lead & 0xf8) == 0xf0) {
+            extra = 3;
+            cp = lead & 0x07;
+        } else {
+            chars.append('\uFFFD');
+            return;
+        }
+        for (int i = 0; i < extra; i++) {
+            int c = read();
+            if (c == -1 || (c & 0xc0) != 0x80) throw syntaxError("Malformed UTF-8");
+            cp = (cp << 6) | (c & 0x3f);
+        }
+        chars.appendCodePoint(cp);
+    }
+
+    private int readHex4() throws IOException {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = read();
+            int d = Character.digit(c, 16);
+            if (c == -1 || d < 0) throw syntaxError("Invalid \\u escape");
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    // Reads a bare value up to the next delimiter and rejects anything but true, false, null or a
+    // well-formed number, so a token like txyz is not taken as text.
+    private void readLiteralInto(Token t) throws IOException {
+        int end = pos;
+        while (end < limit && !isDelimiter(buf[end])) end++;
+        if (end < limit || in == null) {
+            rawStart = pos;
+            rawEnd = end;
+            pos = end;
+        } else {
+            StringBuilder chars = clearChars();
+            while (true) {
+                int c = read();
+                if (c == -1) break;
+                if (isDelimiter(c)) {
+                    pos--;
+                    break;
+                }
+                chars.append((char) c);
+            }
+        }
+        boolean valid;
+        switch (t) {
+            case BOOLEAN:
+                valid = textEquals("true") || textEquals("false");
+                break;
+            case NULL:
+                valid = textEquals("null");
+                break;
+            default:
+                valid = isNumber();
+        }
+        if (!valid) throw syntaxError("Unexpected value " + text());
+    }
+
+    private static boolean isDelimiter(int c) {
+        return isWhitespace(c) || c == ',' || c == '}' || c == ']' || c == ':';
+    }
+
+    // -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+    private boolean isNumber() {
+        int i = 0;
+        int n = textLength();
+        if (i < n && textAt(i) == '-') i++;
+        if (i == n) return false;
+        if (textAt(i) == '0') {
+            i++;
+        } else {
+            int start = i;
+            while (i < n && isDigit(textAt(i))) i++;
+            if (i == start) return false;
+        }
+        if (i < n && textAt(i) == '.') {
+            int start = ++i;
+            while (i < n && isDigit(textAt(i))) i++;
+            if (i == start) return false;
+        }
+        if (i < n && (textAt(i) == 'e' || textAt(i) == 'E')) {
+            i++;
+            if (i < n && (textAt(i) == '+' || textAt(i) == '-')) i++;
+            int start = i;
+            while (i < n && isDigit(textAt(i))) i++;
+            if (i == start) return false;
+        }
+        return i == n;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) throw syntaxError("Unterminated string");
+            if (c == '"') return;
+            if (c < 0x20) throw syntaxError("Unescaped control character in string");
+            if (c == '\\') read();
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = read();
+        while (isWhitespace(c)) c = read();
+        if (c == -1) throw syntaxError("Unexpected end of input");
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            if (in == null) return -1;
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) return -1;
+            pos = 0;
+            limit = n;
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private IllegalArgumentException syntaxError(String message) {
+        return new IllegalArgumentException("Invalid JSON: " + message);
+    }
+}
@@ -1,3 +1,7 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -38,82 +42,41 @@ public class JsonUtil {
     }
 
     public static Map<String, String> parseFlatObject(String json) {
-        // Minimal JSON parser for inputs like: {"k":"v","k2":"v2"}
-        // Assumes keys and values are strings.
-        Map<String, String> map = new LinkedHashMap<>();
-        if (json == null) return map;
-        String s = json.trim();
-        if (s.isEmpty()) return map;
-        if (s.startsWith("{")) s = s.substring(1);
-        if (s.endsWith("}")) s = s.substring(0, s.length() - 1);
-        s = s.trim();
-        if (s.isEmpty()) return map;
-
-        int i = 0;
-        while (i < s.length()) {
-            i = skipWs(s, i);
-            if (i >= s.length()) break;
-            if (s.charAt(i) != '"') break;
-            ParseResult key = parseJsonString(s, i);
-            i = skipWs(s, key.next);
-            if (i >= s.length() || s.charAt(i) != ':') break;
-            i++;
-            i = skipWs(s, i);
-            if (i >= s.length() || s.charAt(i) != '"') break;
-            ParseResult val = parseJsonString(s, i);
-            map.put(key.value, val.value);
-            i = skipWs(s, val.next);
-            if (i < s.length() && s.charAt(i) == ',') i++;
-        }
-
-        return map;
-    }
-
-    private static int skipWs(String s, int i) {
-        while (i < s.length()) {
-            char c = s.charAt(i);
-            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return i;
-            i++;
+        if (json == null) return new LinkedHashMap<>();
+        try {
+            return readFields(new JsonReader(json.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return i;
     }
 
-    private static class ParseResult {
-        final String value;
-        final int next;
-
-        private ParseResult(String value, int next) {
-            this.value = value;
-            this.next = next;
-        }
+    // Reads the top-level scalar fields of a JSON object straight from the stream. When names are
+    // given only those fields are decoded; everything else, including nested values, is skipped.
+    // Numbers and booleans come back as their literal text and nulls are left out.
+    public static Map<String, String> readFields(InputStream in, String... names) throws IOException {
+        return readFields(new JsonReader(in), names);
     }
 
-    private static ParseResult parseJsonString(String s, int startQuote) {
-        int i = startQuote + 1;
-        StringBuilder out = new StringBuilder();
-        while (i < s.length()) {
-            char c = s.charAt(i);
-            if (c == '"') {
-                return new ParseResult(out.toString(), i + 1);
+    public static Map<String, String> readFields(JsonReader reader, String... names) throws IOException {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (reader.peek() == JsonReader.Token.END_DOCUMENT) return map;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key;
+            if (names.length == 0) {
+                key = reader.nextName();
+            } else {
+                int idx = reader.nextName(names);
+                key = idx < 0 ? null : names[idx];
             }
-            if (c == '\\') {
-                i++;
-                if (i >= s.length()) break;
-                char esc = s.charAt(i);
-                switch (esc) {
-                    case '"': out.append('"'); break;
-                    case '\\': out.append('\\'); break;
-                    case 'n': out.append('\n'); break;
-                    case 'r': out.append('\r'); break;
-                    case 't': out.append('\t'); break;
-                    default: out.append(esc);
-                }
-                i++;
+            JsonReader.Token t = reader.peek();
+            if (key == null || t == JsonReader.Token.BEGIN_OBJECT || t == JsonReader.Token.BEGIN_ARRAY || t == JsonReader.Token.NULL) {
+                reader.skipValue();
                 continue;
             }
-            out.append(c);
-            i++;
+            map.put(key, reader.nextString());
         }
-        return new ParseResult(out.toString(), i);
+        reader.endObject();
+        return map;
     }
 }
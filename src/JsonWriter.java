@@ -0,0 +1,242 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Writes JSON as UTF-8 straight into an OutputStream through a pooled 8 KB buffer.
+public class JsonWriter implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final ArrayBlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(256);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private byte[] buf;
+    private int pos;
+    private boolean[] hasElements = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(OutputStream out) {
+        this.out = out;
+        byte[] pooled = POOL.poll();
+        this.buf = pooled != null ? pooled : new byte[BUFFER_SIZE];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        beforeValue();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String s) throws IOException {
+        if (s == null) return nullValue();
+        beforeValue();
+        writeString(s);
+        return this;
+    }
+
+    public JsonWriter value(long v) throws IOException {
+        beforeValue();
+        writeLong(v);
+        return this;
+    }
+
+    public JsonWriter value(boolean v) throws IOException {
+        beforeValue();
+        writeAscii(v ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writeAscii("null");
+        return this;
+    }
+
+    // Inserts an already-encoded JSON value, e.g. a cached fragment.
+    public JsonWriter rawValue(String json) throws IOException {
+        beforeValue();
+        writeChars(json);
+        return this;
+    }
+
+    // Ends a top-level value, for newline-delimited JSON (one document per line).
+    public JsonWriter newline() throws IOException {
+        if (depth != 0) throw new IllegalStateException("newline() is only allowed between top-level values");
+        writeByte('\n');
+        return this;
+    }
+
+    public JsonWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public void flush() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buf == null) return;
+        try {
+            flush();
+            out.close();
+        } finally {
+            POOL.offer(buf);
+            buf = null;
+        }
+    }
+
+    private void push() {
+        if (depth == hasElements.length) hasElements = java.util.Arrays.copyOf(hasElements, depth * 2);
+        hasElements[depth++] = false;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) writeByte(',');
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"': writeByte('\\'); writeByte('"'); break;
+                    case '\\': writeByte('\\'); writeByte('\\'); break;
+                    case '\n': writeByte('\\'); writeByte('n'); break;
+                    case '\r': writeByte('\\'); writeByte('r'); break;
+                    case '\t': writeByte('\\'); writeByte('t'); break;
+                    default:
+                        if (c < 0x20) {
+                            writeAscii("\\u00");
+                            writeByte(HEX[c >> 4]);
+                            writeByte(HEX[c & 0xf]);
+                        } else {
+                            writeByte(c);
+                        }
+                }
+            } else {
+                i = writeUtf8(s, i);
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeChars(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) writeByte(c);
+            else i = writeUtf8(s, i);
+        }
+    }
+
+    // Encodes the non-ASCII char at i and returns the index of the last char consumed.
+    private int writeUtf8(String s, int i) throws IOException {
+        char c = s.charAt(i);
+        if (c < 0x800) {
+            writeByte(0xc0 | (c >> 6));
+            writeByte(0x80 | (c & 0x3f));
+            return i;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            writeByte(0xf0 | (cp >> 18));
+            writeByte(0x80 | ((cp >> 12) & 0x3f));
+            writeByte(0x80 | ((cp >> 6) & 0x3f));
+            writeByte(0x80 | (cp & 0x3f));
+            return i + 1;
+        }
+        if (Character.isSurrogate(c)) {
+            writeByte('?');
+            return i;
+        }
+        writeByte(0xe0 | (c >> 12));
+        writeByte(0x80 | ((c >> 6) & 0x3f));
+        writeByte(0x80 | (c & 0x3f));
+        return i;
+    }
+
+    private void writeLong(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            writeAscii(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            writeByte('-');
+            v = -v;
+        }
+        if (pos + 20 > buf.length) drain();
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) writeByte(s.charAt(i));
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (pos == buf.length) drain();
+        buf[pos++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+}
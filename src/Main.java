@@ -1,40 +1,134 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.net.URLDecoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Main {
+    private static final String[] RESERVATION_FIELDS = {
+            "reservationNumber", "guestName", "address", "contactNumber", "roomType", "checkIn", "checkOut"
+    };
+    private static final String[] EXPORT_COLUMNS = {
+            "reservationNumber", "ownerUsername", "guestName", "address", "contactNumber", "roomType", "checkIn", "checkOut"
+    };
+
     public static void main(String[] args) throws Exception {
         int port = 8080;
-        if (args != null && args.length > 0) {
-            try {
-                port = Integer.parseInt(args[0]);
-            } catch (NumberFormatException ignored) {
+        Map<String, String> options = new LinkedHashMap<>();
+        if (args != null) {
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    int eq = arg.indexOf('=');
+                    if (eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                    else options.put(arg.substring(2), "true");
+                    continue;
+                }
+                try {
+                    port = Integer.parseInt(arg);
+                } catch (NumberFormatException ignored) {
+                }
             }
         }
 
         Path projectRoot = Path.of(System.getProperty("user.dir"));
         Path publicDir = projectRoot.resolve("public");
         Path dataDir = projectRoot.resolve("data");
-        Path reservationsFile = dataDir.resolve("reservations.txt");
+        ReservationFormat format = ReservationFormat.named(options.getOrDefault("storage", System.getProperty("resort.storage", "text")));
+        Durability durability = Durability.named(options.getOrDefault("durability", System.getProperty("resort.durability", "batch")));
+        boolean jfr = Boolean.parseBoolean(options.getOrDefault("jfr", System.getProperty("resort.jfr", "false")));
+        if (jfr) {
+            // Started before the store loads so the replay shows up in the recording.
+            ResortEvents.startContinuous(
+                    java.time.Duration.ofMinutes(Long.getLong("resort.jfr.maxAgeMinutes", 30L)),
+                    Long.getLong("resort.jfr.maxSizeMb", 64L) * 1024 * 1024
+            );
+        }
+        Path textFile = dataDir.resolve("reservations.txt");
+        Path binaryFile = dataDir.resolve("reservations.bin");
+        Path reservationsFile = format instanceof BinaryReservationFormat ? binaryFile : textFile;
+        Path otherFile = reservationsFile == binaryFile ? textFile : binaryFile;
+        if (!Files.exists(reservationsFile) && Files.exists(otherFile)) {
+            ReservationFormat otherFormat = format instanceof BinaryReservationFormat ? new TextReservationFormat() : new BinaryReservationFormat();
+            int migrated = ReservationStore.migrate(otherFile, otherFormat, reservationsFile, format);
+            // Moved aside so a later start with the other storage cannot quietly serve the old book.
+            Path archived = otherFile.resolveSibling(otherFile.getFileName() + ".migrated");
+            Files.move(otherFile, archived, StandardCopyOption.REPLACE_EXISTING);
+            Durability.ALWAYS.forceDirectory(dataDir);
+            System.out.println("Migrated " + migrated + " reservations from " + otherFile.getFileName() + " to " + reservationsFile.getFileName()
+                    + " (old file kept as " + archived.getFileName() + ")");
+        } else if (Files.exists(reservationsFile) && Files.exists(otherFile)
+                && Files.getLastModifiedTime(otherFile).compareTo(Files.getLastModifiedTime(reservationsFile)) > 0) {
+            // Left by a migration from before sources were archived, and written to since.
+            throw new IOException(otherFile.getFileName() + " is newer than " + reservationsFile.getFileName()
+                    + "; the server was last run with --storage=" + (format instanceof BinaryReservationFormat ? "text" : "binary")
+                    + ". Start with that storage, or move one of the files out of " + dataDir + " first.");
+        }
         Path usersFile = dataDir.resolve("users.txt");
+        Path roomsFile = dataDir.resolve("rooms.txt");
 
-        ReservationStore store = new ReservationStore(reservationsFile);
+        RoomRates.load(dataDir.resolve("rates.txt"));
+        RoomRates.startWatching(2);
+
+        RoomInventory inventory = new RoomInventory(roomsFile);
+        inventory.load();
+        ReservationStore store = new ReservationStore(reservationsFile, inventory, format);
+        store.groupCommit(
+                Integer.getInteger("resort.commit.maxBatch", 256),
+                Long.getLong("resort.commit.maxLatencyMicros", 0L)
+        );
+        store.durability(durability);
+        ReservationColumns columns = new ReservationColumns();
+        store.addListener(columns);
+        ReportEngine reports = new ReportEngine(columns, inventory);
+        ResponseCache responses = new ResponseCache(Integer.getInteger("resort.responseCache.maxEntries", 10_000));
+        store.addListener(responses);
         AuthService auth = new AuthService(usersFile);
+        auth.durability(durability);
         store.ensureExists();
         auth.ensureUsersFile();
+        auth.startSessionSweeper();
+
+        ReservationCompactor compactor = new ReservationCompactor(
+                store,
+                Long.getLong("resort.compaction.minGarbage", 1000L),
+                Double.parseDouble(System.getProperty("resort.compaction.minRatio", "0.5"))
+        );
+        compactor.start(Long.getLong("resort.compaction.intervalSeconds", 60L));
 
+        // Without TCP_NODELAY every keep-alive request after the first waits ~40 ms on delayed ACKs.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
         HttpServer server;
         int boundPort = port;
         try {
@@ -52,15 +146,22 @@ public class Main {
             if (server == null) throw be;
         }
 
-        server.createContext("/api/login", ex -> {
+        java.util.List<HttpContext> contexts = new java.util.ArrayList<>();
+
+        contexts.add(server.createContext("/api/login", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
                 HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
                 return;
             }
             try {
-                String body = HttpUtil.readBody(ex);
-                Map<String, String> obj = JsonUtil.parseFlatObject(body);
+                Map<String, String> obj;
+                try {
+                    obj = HttpUtil.readJsonFields(ex, "username", "password");
+                } catch (IllegalArgumentException badJson) {
+                    HttpUtil.sendJson(ex, 400, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(badJson.getMessage()) + "}");
+                    return;
+                }
                 String username = obj.getOrDefault("username", "").trim();
                 String password = obj.getOrDefault("password", "").trim();
                 if (username.isEmpty() || password.isEmpty()) {
@@ -75,9 +176,9 @@ public class Main {
             } catch (Exception e) {
                 HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
             }
-        });
+        }));
 
-        server.createContext("/api/logout", ex -> {
+        contexts.add(server.createContext("/api/logout", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
                 HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
@@ -86,9 +187,9 @@ public class Main {
             String token = HttpUtil.bearerToken(ex);
             auth.logout(token);
             HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"message\":\"Logged out\"}");
-        });
+        }));
 
-        server.createContext("/api/me", ex -> {
+        contexts.add(server.createContext("/api/me", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
                 HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
@@ -101,31 +202,20 @@ public class Main {
             } catch (IllegalArgumentException iae) {
                 HttpUtil.sendJson(ex, 401, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
             }
-        });
+        }));
 
-        server.createContext("/api/rates", ex -> {
+        contexts.add(server.createContext("/api/rates", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
                 HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
                 return;
             }
 
-            Map<String, Integer> rates = RoomRates.defaultRates();
-            StringBuilder arr = new StringBuilder();
-            arr.append("[");
-            boolean first = true;
-            for (Map.Entry<String, Integer> e : rates.entrySet()) {
-                if (!first) arr.append(",");
-                first = false;
-                arr.append("{\"roomType\":").append(JsonUtil.jsonString(e.getKey()))
-                        .append(",\"ratePerNight\":").append(e.getValue()).append("}");
-            }
-            arr.append("]");
-
-            HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"rates\":" + arr + "}");
-        });
+            RateTable rates = RoomRates.current();
+            HttpUtil.sendCachedJson(ex, rates.ratesJson(), rates.etag());
+        }));
 
-        server.createContext("/api/help", ex -> {
+        contexts.add(server.createContext("/api/help", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
                 HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
@@ -142,9 +232,9 @@ public class Main {
                     + "- Reservation numbers must be unique.\n"
                     + "- Check-out date must be after check-in date.\n";
             HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"text\":" + JsonUtil.jsonString(help) + "}");
-        });
+        }));
 
-        server.createContext("/api/users", ex -> {
+        contexts.add(server.createContext("/api/users", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             try {
                 String token = HttpUtil.bearerToken(ex);
@@ -152,19 +242,16 @@ public class Main {
 
                 if ("GET".equalsIgnoreCase(ex.getRequestMethod())) {
                     java.util.List<AuthService.UserRecord> list = auth.listUsers();
-                    StringBuilder arr = new StringBuilder();
-                    arr.append("[");
-                    boolean first = true;
-                    for (AuthService.UserRecord u : list) {
-                        if (!first) arr.append(",");
-                        first = false;
-                        Map<String, String> fields = new LinkedHashMap<>();
-                        fields.put("username", JsonUtil.jsonString(u.username));
-                        fields.put("role", JsonUtil.jsonString(u.role == null ? AuthService.Role.CUSTOMER.name() : u.role.name()));
-                        arr.append(JsonUtil.jsonObjectRaw(fields));
-                    }
-                    arr.append("]");
-                    HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"users\":" + arr + "}");
+                    HttpUtil.sendJsonStream(ex, 200, w -> {
+                        w.beginObject().field("ok", true).name("users").beginArray();
+                        for (AuthService.UserRecord u : list) {
+                            w.beginObject()
+                                    .field("username", u.username)
+                                    .field("role", u.role == null ? AuthService.Role.CUSTOMER.name() : u.role.name())
+                                    .endObject();
+                        }
+                        w.endArray().endObject();
+                    });
                     return;
                 }
 
@@ -173,8 +260,7 @@ public class Main {
                     return;
                 }
 
-                String body = HttpUtil.readBody(ex);
-                Map<String, String> obj = JsonUtil.parseFlatObject(body);
+                Map<String, String> obj = HttpUtil.readJsonFields(ex, "username", "password", "role");
                 String username = obj.getOrDefault("username", "").trim();
                 String password = obj.getOrDefault("password", "").trim();
                 String roleStr = obj.getOrDefault("role", "CUSTOMER").trim().toUpperCase();
@@ -194,9 +280,9 @@ public class Main {
             } catch (Exception e) {
                 HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
             }
-        });
+        }));
 
-        server.createContext("/api/users/", ex -> {
+        contexts.add(server.createContext("/api/users/", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             if (!"DELETE".equalsIgnoreCase(ex.getRequestMethod())) {
                 HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
@@ -223,40 +309,44 @@ public class Main {
             } catch (Exception e) {
                 HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
             }
-        });
+        }));
 
-        server.createContext("/api/reservations", ex -> {
+        contexts.add(server.createContext("/api/reservations", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             try {
                 String token = HttpUtil.bearerToken(ex);
                 AuthService.Session s = auth.requireSession(token);
 
                 if ("GET".equalsIgnoreCase(ex.getRequestMethod())) {
-                    java.util.List<Reservation> list = store.listAll();
-                    StringBuilder arr = new StringBuilder();
-                    arr.append("[");
-                    boolean first = true;
-                    for (Reservation r : list) {
-                        if (s.role != AuthService.Role.ADMIN && (r.ownerUsername == null || !r.ownerUsername.equals(s.username))) {
-                            continue;
+                    String forcedOwner = s.role == AuthService.Role.ADMIN ? null : s.username;
+                    ReservationQuery q = ReservationQuery.fromParams(HttpUtil.queryParams(ex), forcedOwner);
+                    java.util.Iterator<Reservation> it = store.query(q);
+                    HttpUtil.sendJsonStream(ex, 200, w -> {
+                        w.beginObject().field("ok", true).name("reservations").beginArray();
+                        Reservation last = null;
+                        int count = 0;
+                        while (it.hasNext() && (q.limit == 0 || count < q.limit)) {
+                            Reservation r = it.next();
+                            last = r;
+                            count++;
+                            w.beginObject()
+                                    .field("reservationNumber", r.reservationNumber)
+                                    .field("guestName", r.guestName)
+                                    .field("address", r.address)
+                                    .field("contactNumber", r.contactNumber)
+                                    .field("roomType", r.roomType)
+                                    .field("checkIn", r.checkIn.toString())
+                                    .field("checkOut", r.checkOut.toString());
+                            if (s.role == AuthService.Role.ADMIN) {
+                                w.field("ownerUsername", r.ownerUsername);
+                            }
+                            w.endObject();
                         }
-                        if (!first) arr.append(",");
-                        first = false;
-                        Map<String, String> fields = new LinkedHashMap<>();
-                        fields.put("reservationNumber", JsonUtil.jsonString(r.reservationNumber));
-                        fields.put("guestName", JsonUtil.jsonString(r.guestName));
-                        fields.put("address", JsonUtil.jsonString(r.address));
-                        fields.put("contactNumber", JsonUtil.jsonString(r.contactNumber));
-                        fields.put("roomType", JsonUtil.jsonString(r.roomType));
-                        fields.put("checkIn", JsonUtil.jsonString(r.checkIn.toString()));
-                        fields.put("checkOut", JsonUtil.jsonString(r.checkOut.toString()));
-                        if (s.role == AuthService.Role.ADMIN) {
-                            fields.put("ownerUsername", JsonUtil.jsonString(r.ownerUsername));
-                        }
-                        arr.append(JsonUtil.jsonObjectRaw(fields));
-                    }
-                    arr.append("]");
-                    HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"reservations\":" + arr + "}");
+                        w.endArray();
+                        if (last != null && it.hasNext()) w.field("nextCursor", q.cursorFor(last));
+                        else w.name("nextCursor").nullValue();
+                        w.endObject();
+                    });
                     return;
                 }
 
@@ -265,44 +355,124 @@ public class Main {
                     return;
                 }
 
-                String body = HttpUtil.readBody(ex);
-                Map<String, String> obj = JsonUtil.parseFlatObject(body);
+                Map<String, String> obj = HttpUtil.readJsonFields(ex, RESERVATION_FIELDS);
 
-                String reservationNumber = obj.getOrDefault("reservationNumber", "").trim();
-                String guestName = obj.getOrDefault("guestName", "").trim();
-                String address = obj.getOrDefault("address", "").trim();
-                String contactNumber = obj.getOrDefault("contactNumber", "").trim();
-                String roomType = obj.getOrDefault("roomType", "").trim().toUpperCase();
-                String checkInStr = obj.getOrDefault("checkIn", "").trim();
-                String checkOutStr = obj.getOrDefault("checkOut", "").trim();
+                Reservation r = readReservation(obj, s.username);
+                store.add(r);
+                HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"message\":\"Reservation saved successfully\"}");
+            } catch (IllegalArgumentException iae) {
+                int status = iae.getMessage() != null && iae.getMessage().toLowerCase().contains("not logged") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            }
+        }));
 
-                if (reservationNumber.isEmpty()) throw new IllegalArgumentException("Reservation number is required");
-                if (guestName.isEmpty()) throw new IllegalArgumentException("Guest name is required");
-                if (address.isEmpty()) throw new IllegalArgumentException("Address is required");
-                if (contactNumber.isEmpty()) throw new IllegalArgumentException("Contact number is required");
-                if (roomType.isEmpty()) throw new IllegalArgumentException("Room type is required");
-                if (checkInStr.isEmpty() || checkOutStr.isEmpty()) throw new IllegalArgumentException("Check-in and check-out dates are required");
+        // Bulk import and export live outside /api/reservations/ so no reservation number is shadowed
+        // by them (contexts match on path prefix).
+        contexts.add(server.createContext("/api/import/reservations", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                return;
+            }
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                AuthService.Session s = auth.requireSession(token);
+                if (s.role != AuthService.Role.ADMIN) throw new IllegalArgumentException("Forbidden");
 
-                LocalDate checkIn = LocalDate.parse(checkInStr);
-                LocalDate checkOut = LocalDate.parse(checkOutStr);
-                if (!checkOut.isAfter(checkIn)) {
-                    throw new IllegalArgumentException("Check-out date must be after check-in date");
+                // Rows may name their owner; otherwise they belong to the importing admin.
+                ReservationImport job = new ReservationImport(store, fields -> {
+                    String owner = fields.getOrDefault("ownerUsername", "").trim();
+                    return readReservation(fields, owner.isEmpty() ? s.username : owner);
+                });
+                String contentType = ex.getRequestHeaders().getFirst("Content-Type");
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8))) {
+                    if (contentType != null && contentType.toLowerCase().contains("csv")) job.readCsv(in);
+                    else job.readNdjson(in);
                 }
 
-                RoomRates.rateForRoomType(roomType);
+                HttpUtil.sendJsonStream(ex, 200, w -> {
+                    w.beginObject().field("ok", true)
+                            .field("imported", job.imported())
+                            .field("failed", job.failed())
+                            .name("errors").beginArray();
+                    for (ReservationImport.RowError e : job.errors()) {
+                        w.beginObject().field("row", e.row);
+                        if (e.reservationNumber != null) w.field("reservationNumber", e.reservationNumber);
+                        w.field("message", e.message).endObject();
+                    }
+                    w.endArray().endObject();
+                });
+            } catch (IllegalArgumentException iae) {
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            }
+        }));
 
-                Reservation r = new Reservation(reservationNumber, s.username, guestName, address, contactNumber, roomType, checkIn, checkOut);
-                store.add(r);
-                HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"message\":\"Reservation saved successfully\"}");
+        contexts.add(server.createContext("/api/export/reservations", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                return;
+            }
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                AuthService.Session s = auth.requireSession(token);
+
+                Map<String, String> params = HttpUtil.queryParams(ex);
+                String exportFormat = params.getOrDefault("format", "ndjson").trim().toLowerCase();
+                if (!exportFormat.equals("ndjson") && !exportFormat.equals("csv")) {
+                    throw new IllegalArgumentException("Format must be ndjson or csv");
+                }
+                boolean admin = s.role == AuthService.Role.ADMIN;
+                ReservationQuery q = ReservationQuery.fromParams(params, admin ? null : s.username);
+                java.util.Iterator<Reservation> it = store.query(q);
+
+                // Rows come straight off the index iterator; nothing is collected first.
+                if (exportFormat.equals("csv")) {
+                    HttpUtil.sendStream(ex, "text/csv; charset=utf-8", "reservations.csv", out -> {
+                        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                        w.write(CsvUtil.row(EXPORT_COLUMNS));
+                        for (int n = 0; it.hasNext() && (q.limit == 0 || n < q.limit); n++) {
+                            Reservation r = it.next();
+                            w.write(CsvUtil.row(r.reservationNumber, admin ? r.ownerUsername : s.username, r.guestName, r.address,
+                                    r.contactNumber, r.roomType, r.checkIn.toString(), r.checkOut.toString()));
+                        }
+                        w.flush();
+                    });
+                } else {
+                    HttpUtil.sendStream(ex, "application/x-ndjson; charset=utf-8", "reservations.ndjson", out -> {
+                        try (JsonWriter w = new JsonWriter(out)) {
+                            for (int n = 0; it.hasNext() && (q.limit == 0 || n < q.limit); n++) {
+                                Reservation r = it.next();
+                                w.beginObject()
+                                        .field("reservationNumber", r.reservationNumber)
+                                        .field("ownerUsername", admin ? r.ownerUsername : s.username)
+                                        .field("guestName", r.guestName)
+                                        .field("address", r.address)
+                                        .field("contactNumber", r.contactNumber)
+                                        .field("roomType", r.roomType)
+                                        .field("checkIn", r.checkIn.toString())
+                                        .field("checkOut", r.checkOut.toString())
+                                        .endObject().newline();
+                            }
+                        }
+                    });
+                }
             } catch (IllegalArgumentException iae) {
                 int status = iae.getMessage() != null && iae.getMessage().toLowerCase().contains("not logged") ? 401 : 400;
                 HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
             } catch (Exception e) {
                 HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
             }
-        });
+        }));
 
-        server.createContext("/api/reservations/", ex -> {
+        contexts.add(server.createContext("/api/reservations/", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             try {
                 String token = HttpUtil.bearerToken(ex);
@@ -344,8 +514,7 @@ public class Main {
                 }
 
                 if ("PUT".equalsIgnoreCase(ex.getRequestMethod())) {
-                    String body = HttpUtil.readBody(ex);
-                    Map<String, String> obj = JsonUtil.parseFlatObject(body);
+                    Map<String, String> obj = HttpUtil.readJsonFields(ex, RESERVATION_FIELDS);
 
                     String guestName = obj.getOrDefault("guestName", r.guestName).trim();
                     String address = obj.getOrDefault("address", r.address).trim();
@@ -373,26 +542,31 @@ public class Main {
                     return;
                 }
 
-                Map<String, String> fields = new LinkedHashMap<>();
-                fields.put("reservationNumber", JsonUtil.jsonString(r.reservationNumber));
-                if (s.role == AuthService.Role.ADMIN) fields.put("ownerUsername", JsonUtil.jsonString(r.ownerUsername));
-                fields.put("guestName", JsonUtil.jsonString(r.guestName));
-                fields.put("address", JsonUtil.jsonString(r.address));
-                fields.put("contactNumber", JsonUtil.jsonString(r.contactNumber));
-                fields.put("roomType", JsonUtil.jsonString(r.roomType));
-                fields.put("checkIn", JsonUtil.jsonString(r.checkIn.toString()));
-                fields.put("checkOut", JsonUtil.jsonString(r.checkOut.toString()));
-                String reservationJson = JsonUtil.jsonObjectRaw(fields);
-
-                HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"reservation\":" + reservationJson + "}");
+                boolean admin = s.role == AuthService.Role.ADMIN;
+                ResponseCache.Entry cached = responses.get(admin ? ResponseCache.RESERVATION_ADMIN : ResponseCache.RESERVATION_GUEST, r, null, w -> {
+                    w.beginObject().field("ok", true).name("reservation").beginObject()
+                            .field("reservationNumber", r.reservationNumber);
+                    if (admin) w.field("ownerUsername", r.ownerUsername);
+                    w.field("guestName", r.guestName)
+                            .field("address", r.address)
+                            .field("contactNumber", r.contactNumber)
+                            .field("roomType", r.roomType)
+                            .field("checkIn", r.checkIn.toString())
+                            .field("checkOut", r.checkOut.toString())
+                            .endObject().endObject();
+                });
+                HttpUtil.sendCachedJson(ex, cached.json, cached.etag);
             } catch (IllegalArgumentException iae) {
-                HttpUtil.sendJson(ex, 401, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
             } catch (Exception e) {
                 HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
             }
-        });
+        }));
 
-        server.createContext("/api/bill/", ex -> {
+        contexts.add(server.createContext("/api/bill/", ex -> {
             if (HttpUtil.handleOptions(ex)) return;
             if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
                 HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
@@ -423,42 +597,339 @@ public class Main {
                     return;
                 }
 
-                long nights = ChronoUnit.DAYS.between(r.checkIn, r.checkOut);
-                int rate = RoomRates.rateForRoomType(r.roomType);
-                long total = nights * (long) rate;
+                // Priced only on a cache miss; a rate reload makes every cached bill stale.
+                RateTable rates = RoomRates.current();
+                ResponseCache.Entry cached = responses.get(ResponseCache.BILL, r, rates, w -> {
+                    w.beginObject().field("ok", true).name("bill");
+                    writeBill(w, BillingEngine.bill(rates, r));
+                    w.endObject();
+                });
+                HttpUtil.sendCachedJson(ex, cached.json, cached.etag);
+            } catch (IllegalArgumentException iae) {
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            }
+        }));
 
-                String billJson = "{" +
-                        "\"reservationNumber\":" + JsonUtil.jsonString(r.reservationNumber) + "," +
-                        "\"guestName\":" + JsonUtil.jsonString(r.guestName) + "," +
-                        "\"roomType\":" + JsonUtil.jsonString(r.roomType) + "," +
-                        "\"checkIn\":" + JsonUtil.jsonString(r.checkIn.toString()) + "," +
-                        "\"checkOut\":" + JsonUtil.jsonString(r.checkOut.toString()) + "," +
-                        "\"nights\":" + nights + "," +
-                        "\"ratePerNight\":" + rate + "," +
-                        "\"total\":" + total +
-                        "}";
+        contexts.add(server.createContext("/api/availability", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                return;
+            }
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                auth.requireSession(token);
+
+                Map<String, String> params = HttpUtil.queryParams(ex);
+                String fromStr = params.getOrDefault("from", "").trim();
+                String toStr = params.getOrDefault("to", "").trim();
+                if (fromStr.isEmpty() || toStr.isEmpty()) throw new IllegalArgumentException("From and to dates are required");
+                LocalDate from = LocalDate.parse(fromStr);
+                LocalDate to = LocalDate.parse(toStr);
+                if (!to.isAfter(from)) throw new IllegalArgumentException("To date must be after from date");
+                if (ChronoUnit.DAYS.between(from, to) > 366) throw new IllegalArgumentException("Date range is limited to 366 nights");
+
+                String roomType = params.getOrDefault("roomType", "").trim().toUpperCase();
+                java.util.List<String> roomTypes = roomType.isEmpty()
+                        ? new java.util.ArrayList<>(inventory.roomTypes())
+                        : java.util.List.of(roomType);
+                for (String t : roomTypes) inventory.rooms(t);
 
-                HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"bill\":" + billJson + "}");
+                HttpUtil.sendJsonStream(ex, 200, w -> {
+                    w.beginObject().field("ok", true)
+                            .field("from", from.toString())
+                            .field("to", to.toString())
+                            .name("availability").beginArray();
+                    for (String t : roomTypes) {
+                        int[] perNight = inventory.freeRoomsPerNight(t, from, to);
+                        w.beginObject()
+                                .field("roomType", t)
+                                .field("rooms", inventory.rooms(t))
+                                .field("available", inventory.freeRooms(t, from, to))
+                                .name("nights").beginArray();
+                        for (int i = 0; i < perNight.length; i++) {
+                            w.beginObject().field("date", from.plusDays(i).toString()).field("free", perNight[i]).endObject();
+                        }
+                        w.endArray().endObject();
+                    }
+                    w.endArray().endObject();
+                });
+            } catch (DateTimeParseException dpe) {
+                HttpUtil.sendJson(ex, 400, "{\"ok\":false,\"message\":\"Dates must be in yyyy-MM-dd format\"}");
             } catch (IllegalArgumentException iae) {
-                HttpUtil.sendJson(ex, 401, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+                int status = iae.getMessage() != null && iae.getMessage().toLowerCase().contains("not logged") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
             } catch (Exception e) {
                 HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
             }
-        });
+        }));
 
-        server.createContext("/", new StaticHandler(publicDir));
+        contexts.add(server.createContext("/api/bills/active", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                return;
+            }
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                auth.requireAdmin(token);
+
+                String dateStr = HttpUtil.queryParams(ex).getOrDefault("date", "").trim();
+                LocalDate date = dateStr.isEmpty() ? LocalDate.now() : LocalDate.parse(dateStr);
+                BillingEngine.ActiveBills active = BillingEngine.billActive(store.listAll(), date);
+                java.util.List<BillingEngine.Bill> bills = active.bills;
+                long grandTotal = 0;
+                for (BillingEngine.Bill b : bills) grandTotal += b.total;
+                long total = grandTotal;
+
+                HttpUtil.sendJsonStream(ex, 200, w -> {
+                    w.beginObject().field("ok", true)
+                            .field("date", date.toString())
+                            .field("count", bills.size())
+                            .field("grandTotal", total)
+                            .name("bills").beginArray();
+                    for (BillingEngine.Bill b : bills) writeBill(w, b);
+                    w.endArray().name("unbilled").beginArray();
+                    for (Reservation r : active.unbilled) {
+                        w.beginObject().field("reservationNumber", r.reservationNumber)
+                                .field("roomType", r.roomType)
+                                .field("message", "No rate for room type " + r.roomType).endObject();
+                    }
+                    w.endArray().endObject();
+                });
+            } catch (DateTimeParseException dpe) {
+                HttpUtil.sendJson(ex, 400, "{\"ok\":false,\"message\":\"Dates must be in yyyy-MM-dd format\"}");
+            } catch (IllegalArgumentException iae) {
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            }
+        }));
 
-        server.setExecutor(null);
+        contexts.add(server.createContext("/api/reports/", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                return;
+            }
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                auth.requireAdmin(token);
+
+                String report = ex.getRequestURI().getPath().substring("/api/reports/".length());
+                Map<String, String> params = HttpUtil.queryParams(ex);
+                String fromStr = params.getOrDefault("from", "").trim();
+                String toStr = params.getOrDefault("to", "").trim();
+                LocalDate from = fromStr.isEmpty() ? null : LocalDate.parse(fromStr);
+                LocalDate to = toStr.isEmpty() ? null : LocalDate.parse(toStr);
+
+                ReportEngine.Report result;
+                if ("occupancy".equals(report)) {
+                    if (from == null) from = LocalDate.now();
+                    if (to == null) to = from.plusDays(30);
+                    result = reports.occupancy(from, to);
+                } else if ("revenue".equals(report)) {
+                    ReportEngine.GroupBy group = ReportEngine.GroupBy.named(params.getOrDefault("groupBy", "roomType").trim());
+                    result = reports.revenue(group, from, to);
+                } else {
+                    HttpUtil.sendJson(ex, 404, "{\"ok\":false,\"message\":\"Not found\"}");
+                    return;
+                }
+                HttpUtil.sendCachedJson(ex, result.json, result.etag);
+            } catch (DateTimeParseException dpe) {
+                HttpUtil.sendJson(ex, 400, "{\"ok\":false,\"message\":\"Dates must be in yyyy-MM-dd format\"}");
+            } catch (IllegalArgumentException iae) {
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            }
+        }));
+
+        contexts.add(server.createContext("/api/compaction", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                auth.requireAdmin(token);
+
+                ReservationStore.CompactionStats stats;
+                if ("POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                    stats = store.compact();
+                    if (stats == null) {
+                        HttpUtil.sendJson(ex, 409, "{\"ok\":false,\"message\":\"Compaction already running\"}");
+                        return;
+                    }
+                } else if ("GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                    stats = store.lastCompaction();
+                } else {
+                    HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                    return;
+                }
+
+                String last = "null";
+                if (stats != null) {
+                    last = "{" +
+                            "\"recordsBefore\":" + stats.recordsBefore + "," +
+                            "\"recordsAfter\":" + stats.recordsAfter + "," +
+                            "\"bytesBefore\":" + stats.bytesBefore + "," +
+                            "\"bytesAfter\":" + stats.bytesAfter + "," +
+                            "\"bytesReclaimed\":" + stats.bytesReclaimed() + "," +
+                            "\"durationMillis\":" + stats.durationMillis + "," +
+                            "\"finishedAt\":" + stats.finishedAtMillis +
+                            "}";
+                }
+                HttpUtil.sendJson(ex, 200, "{\"ok\":true,\"logRecords\":" + store.logRecords()
+                        + ",\"liveRecords\":" + store.liveRecords() + ",\"lastCompaction\":" + last + "}");
+            } catch (IllegalArgumentException iae) {
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            }
+        }));
+
+        // Prometheus text exposition; scrape with an admin bearer token.
+        contexts.add(server.createContext("/api/metrics", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                return;
+            }
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                auth.requireAdmin(token);
+                HttpUtil.sendText(ex, 200, Metrics.prometheusText(), "text/plain; version=0.0.4");
+            } catch (IllegalArgumentException iae) {
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            }
+        }));
+
+        contexts.add(server.createContext("/api/diagnostics/jfr", ex -> {
+            if (HttpUtil.handleOptions(ex)) return;
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                HttpUtil.sendJson(ex, 405, "{\"ok\":false,\"message\":\"Method not allowed\"}");
+                return;
+            }
+            Path dump = null;
+            try {
+                String token = HttpUtil.bearerToken(ex);
+                auth.requireAdmin(token);
+                if (!ResortEvents.recording()) {
+                    HttpUtil.sendJson(ex, 409, "{\"ok\":false,\"message\":\"Flight recording is off; start the server with --jfr\"}");
+                    return;
+                }
+                dump = Files.createTempFile("ocean-resort-", ".jfr");
+                ResortEvents.dump(dump);
+                Path file = dump;
+                String name = "ocean-resort-" + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(ZonedDateTime.now()) + ".jfr";
+                HttpUtil.sendStream(ex, "application/octet-stream", name, out -> Files.copy(file, out));
+            } catch (IllegalArgumentException iae) {
+                String msg = iae.getMessage() == null ? "" : iae.getMessage();
+                int status = "Forbidden".equalsIgnoreCase(msg) ? 403
+                        : msg.startsWith("Not logged") || msg.startsWith("Session expired") ? 401 : 400;
+                HttpUtil.sendJson(ex, status, "{\"ok\":false,\"message\":" + JsonUtil.jsonString(iae.getMessage()) + "}");
+            } catch (Exception e) {
+                HttpUtil.sendJson(ex, 500, "{\"ok\":false,\"message\":\"Server error\"}");
+            } finally {
+                if (dump != null) Files.deleteIfExists(dump);
+            }
+        }));
+
+        contexts.add(server.createContext("/", new StaticHandler(publicDir)));
+
+        RequestExecutor executor = RequestExecutor.fromConfig(options);
+        for (HttpContext context : contexts) {
+            context.getFilters().add(Metrics.httpFilter(context.getPath()));
+            context.getFilters().add(ResortEvents.httpFilter(context.getPath()));
+            context.getFilters().add(executor.sheddingFilter());
+        }
+        Metrics.gauge("resort_http_pending_requests", "Requests accepted but not yet finished.", executor::pending);
+        Metrics.gauge("resort_store_live_records", "Reservations currently in the store.", store::liveRecords);
+        Metrics.gauge("resort_store_log_records", "Records in the reservation log, including superseded ones.", store::logRecords);
+        Metrics.gauge("resort_response_cache_entries", "Serialised reservation and bill responses held in memory.", responses::size);
+
+        server.setExecutor(executor);
         server.start();
         System.out.println("Ocean View Resort system started.");
+        System.out.println("Request executor: " + executor.mode().name().toLowerCase() + " (max queue " + executor.maxPending() + ")");
+        System.out.println("Storage: " + format.name() + ", durability " + durability.name().toLowerCase());
+        if (jfr) System.out.println("Flight recording: on (GET /api/diagnostics/jfr to dump)");
         System.out.println("Open: http://localhost:" + boundPort + "/");
     }
 
+    // Validates the fields of one reservation as sent to POST /api/reservations or the bulk import.
+    private static Reservation readReservation(Map<String, String> obj, String ownerUsername) {
+        String reservationNumber = obj.getOrDefault("reservationNumber", "").trim();
+        String guestName = obj.getOrDefault("guestName", "").trim();
+        String address = obj.getOrDefault("address", "").trim();
+        String contactNumber = obj.getOrDefault("contactNumber", "").trim();
+        String roomType = obj.getOrDefault("roomType", "").trim().toUpperCase();
+        String checkInStr = obj.getOrDefault("checkIn", "").trim();
+        String checkOutStr = obj.getOrDefault("checkOut", "").trim();
+
+        if (reservationNumber.isEmpty()) throw new IllegalArgumentException("Reservation number is required");
+        if (guestName.isEmpty()) throw new IllegalArgumentException("Guest name is required");
+        if (address.isEmpty()) throw new IllegalArgumentException("Address is required");
+        if (contactNumber.isEmpty()) throw new IllegalArgumentException("Contact number is required");
+        if (roomType.isEmpty()) throw new IllegalArgumentException("Room type is required");
+        if (checkInStr.isEmpty() || checkOutStr.isEmpty()) throw new IllegalArgumentException("Check-in and check-out dates are required");
+
+        LocalDate checkIn = LocalDate.parse(checkInStr);
+        LocalDate checkOut = LocalDate.parse(checkOutStr);
+        if (!checkOut.isAfter(checkIn)) {
+            throw new IllegalArgumentException("Check-out date must be after check-in date");
+        }
+
+        RoomRates.rateForRoomType(roomType);
+
+        return new Reservation(reservationNumber, ownerUsername, guestName, address, contactNumber, roomType, checkIn, checkOut);
+    }
+
+    private static void writeBill(JsonWriter w, BillingEngine.Bill b) throws IOException {
+        Reservation r = b.reservation;
+        w.beginObject()
+                .field("reservationNumber", r.reservationNumber)
+                .field("guestName", r.guestName)
+                .field("roomType", r.roomType)
+                .field("checkIn", r.checkIn.toString())
+                .field("checkOut", r.checkOut.toString())
+                .field("nights", b.nights)
+                .field("ratePerNight", b.ratePerNight)
+                .field("averageRatePerNight", b.averageRatePerNight())
+                .field("total", b.total)
+                .endObject();
+    }
+
     static class StaticHandler implements HttpHandler {
+        private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+        private static final long MAP_WINDOW = 16L * 1024 * 1024;
+        private static final long[] UNSATISFIABLE = new long[0];
+
         private final Path publicDir;
+        private final AssetCache assets;
 
-        StaticHandler(Path publicDir) {
+        StaticHandler(Path publicDir) throws IOException {
             this.publicDir = publicDir;
+            this.assets = new AssetCache(publicDir, Long.getLong("resort.static.maxCachedBytes", 256 * 1024L));
+            assets.load();
+            assets.startWatching();
         }
 
         @Override
@@ -479,29 +950,163 @@ public class Main {
                 return;
             }
 
-            if (!Files.exists(target) || Files.isDirectory(target)) {
+            AssetCache.Asset asset = assets.get(publicDir.normalize().relativize(target).toString().replace('\\', '/'));
+            if (asset == null) {
                 HttpUtil.sendText(ex, 404, "Not Found", "text/plain");
                 return;
             }
 
-            String ct = contentType(target.getFileName().toString());
-            byte[] bytes = Files.readAllBytes(target);
-            ex.getResponseHeaders().set("Content-Type", ct);
-            ex.getResponseHeaders().set("Cache-Control", "no-store");
-            ex.sendResponseHeaders(200, bytes.length);
-            ex.getResponseBody().write(bytes);
-            ex.close();
+            Headers req = ex.getRequestHeaders();
+            long[] range = requestedRange(req.getFirst("Range"), req.getFirst("If-Range"), asset);
+            boolean gzip = range == null && asset.gzipBody != null && acceptsGzip(req.getFirst("Accept-Encoding"));
+            String etag = gzip ? asset.gzipEtag : asset.etag;
+
+            Headers h = ex.getResponseHeaders();
+            h.set("Content-Type", asset.contentType);
+            h.set("ETag", etag);
+            h.set("Last-Modified", HTTP_DATE.format(asset.lastModified));
+            h.set("Vary", "Accept-Encoding");
+            h.set("Accept-Ranges", "bytes");
+            h.set("Cache-Control", isVersioned(ex.getRequestURI().getRawQuery(), target.getFileName().toString())
+                    ? "public, max-age=31536000, immutable"
+                    : "no-cache");
+
+            if (notModified(req, asset, etag)) {
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+                return;
+            }
+
+            if (range == UNSATISFIABLE) {
+                h.set("Content-Range", "bytes */" + asset.size);
+                ex.sendResponseHeaders(416, -1);
+                ex.close();
+                return;
+            }
+
+            if (gzip) {
+                h.set("Content-Encoding", "gzip");
+                ex.sendResponseHeaders(200, asset.gzipBody.length);
+                ex.getResponseBody().write(asset.gzipBody);
+                ex.close();
+                return;
+            }
+
+            // Files served from disk may have changed since they were cached, so the length sent is
+            // what the open file holds now, not the cached size.
+            FileChannel ch = null;
+            if (asset.body == null) {
+                try {
+                    ch = FileChannel.open(asset.path, StandardOpenOption.READ);
+                } catch (NoSuchFileException gone) {
+                    HttpUtil.sendText(ex, 404, "Not Found", "text/plain");
+                    return;
+                }
+            }
+            try {
+                long size = ch == null ? asset.size : ch.size();
+                long start = 0;
+                long length = size;
+                int status = 200;
+                if (range != null) {
+                    if (range[1] >= size) {
+                        h.set("Content-Range", "bytes */" + size);
+                        ex.sendResponseHeaders(416, -1);
+                        ex.close();
+                        return;
+                    }
+                    start = range[0];
+                    length = range[1] - range[0] + 1;
+                    status = 206;
+                    h.set("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+                }
+                ex.sendResponseHeaders(status, length == 0 ? -1 : length);
+                try (OutputStream out = ex.getResponseBody()) {
+                    if (ch == null) out.write(asset.body, (int) start, (int) length);
+                    else writeMapped(ch, start, length, out);
+                } finally {
+                    ex.close();
+                }
+            } finally {
+                if (ch != null) ch.close();
+            }
+        }
+
+        // Maps the file a window at a time so large assets are paged in from the page cache
+        // instead of being copied into a heap array. If the file shrinks under us this throws
+        // rather than sending fewer bytes than promised; the server then drops the connection.
+        private static void writeMapped(FileChannel ch, long start, long length, OutputStream out) throws IOException {
+            WritableByteChannel sink = Channels.newChannel(out);
+            long end = start + length;
+            try {
+                for (long pos = start; pos < end; pos += MAP_WINDOW) {
+                    MappedByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, end - pos));
+                    while (window.hasRemaining()) sink.write(window);
+                }
+            } catch (InternalError truncated) {
+                // Touching a mapped page past the new end of the file.
+                throw new IOException("File was truncated while being sent", truncated);
+            }
+        }
+
+        // Single byte ranges only ("bytes=a-b", "bytes=a-", "bytes=-n"); anything else is served whole.
+        // Returns UNSATISFIABLE for ranges that start past the end of the file.
+        private static long[] requestedRange(String header, String ifRange, AssetCache.Asset asset) {
+            if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
+            if (ifRange != null && !ifRange.trim().equals(asset.etag)) return null;
+            String spec = header.substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) return null;
+            try {
+                long size = asset.size;
+                long first;
+                long last;
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1).trim());
+                    if (suffix <= 0) return UNSATISFIABLE;
+                    first = Math.max(0, size - suffix);
+                    last = size - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash).trim());
+                    String lastStr = spec.substring(dash + 1).trim();
+                    last = lastStr.isEmpty() ? size - 1 : Math.min(Long.parseLong(lastStr), size - 1);
+                    if (last < first) return first >= size ? UNSATISFIABLE : null;
+                }
+                if (first >= size) return UNSATISFIABLE;
+                return new long[]{first, last};
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static boolean notModified(Headers req, AssetCache.Asset asset, String etag) {
+            String ifNoneMatch = req.getFirst("If-None-Match");
+            if (ifNoneMatch != null) return HttpUtil.etagMatches(ifNoneMatch, etag);
+            String ifModifiedSince = req.getFirst("If-Modified-Since");
+            if (ifModifiedSince == null) return false;
+            try {
+                Instant since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return !asset.lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+            } catch (DateTimeParseException ignored) {
+                return false;
+            }
+        }
+
+        private static boolean acceptsGzip(String acceptEncoding) {
+            if (acceptEncoding == null) return false;
+            for (String part : acceptEncoding.split(",")) {
+                String[] coding = part.trim().split(";");
+                if (!coding[0].trim().equalsIgnoreCase("gzip")) continue;
+                return coding.length < 2 || !coding[1].trim().replace(" ", "").equals("q=0");
+            }
+            return false;
         }
 
-        private static String contentType(String name) {
-            String lower = name.toLowerCase();
-            if (lower.endsWith(".html")) return "text/html; charset=utf-8";
-            if (lower.endsWith(".css")) return "text/css; charset=utf-8";
-            if (lower.endsWith(".js")) return "application/javascript; charset=utf-8";
-            if (lower.endsWith(".png")) return "image/png";
-            if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) return "image/jpeg";
-            if (lower.endsWith(".svg")) return "image/svg+xml";
-            return "application/octet-stream";
+        // Assets requested as name.js?v=... or with a content hash in the file name
+        // (app.3f9a1c2b.js) never change under that URL.
+        private static boolean isVersioned(String query, String fileName) {
+            if (query != null && (query.startsWith("v=") || query.contains("&v="))) return true;
+            return fileName.matches(".*\\.[0-9a-fA-F]{8,}\\.[A-Za-z0-9]+$");
         }
     }
-}
\ No newline at end of file
+}
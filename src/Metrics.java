@@ -0,0 +1,193 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process-wide counters, gauges and histograms, written out in the Prometheus text format by
+// /api/metrics. Recording is a few LongAdder increments, so it is cheap enough for every request.
+public class Metrics {
+    // Upper bounds in nanoseconds for latency histograms: 0.5 ms up to 10 s.
+    public static final long[] LATENCY_BOUNDS = {
+            500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // Buckets hold non-cumulative counts; they are summed up to each "le" bound only on output.
+    public static final class Histogram {
+        private final long[] bounds;
+        private final double scale;
+        private final LongAdder[] buckets;
+        private final LongAdder sum = new LongAdder();
+        private final LongAdder count = new LongAdder();
+
+        Histogram(long[] bounds, double scale) {
+            this.bounds = bounds;
+            this.scale = scale;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        public void observe(long value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) i++;
+            buckets[i].increment();
+            sum.add(value);
+            count.increment();
+        }
+
+        public void observeSince(long startNanos) {
+            observe(System.nanoTime() - startNanos);
+        }
+    }
+
+    public static Counter counter(String name, String help) {
+        return counter(name, help, "");
+    }
+
+    // labels is the already-formatted label set, e.g. route="/api/login",status="200".
+    public static Counter counter(String name, String help, String labels) {
+        return (Counter) family(name, help, "counter").series.computeIfAbsent(labels, k -> new Counter());
+    }
+
+    public static Histogram timer(String name, String help) {
+        return timer(name, help, "");
+    }
+
+    // Latency in nanoseconds, exported in seconds.
+    public static Histogram timer(String name, String help, String labels) {
+        return (Histogram) family(name, help, "histogram").series.computeIfAbsent(labels, k -> new Histogram(LATENCY_BOUNDS, 1e9));
+    }
+
+    public static Histogram histogram(String name, String help, long[] bounds) {
+        return (Histogram) family(name, help, "histogram").series.computeIfAbsent("", k -> new Histogram(bounds, 1));
+    }
+
+    public static void gauge(String name, String help, LongSupplier value) {
+        family(name, help, "gauge").series.put("", value);
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family f = FAMILIES.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!f.type.equals(type)) throw new IllegalArgumentException("Metric " + name + " is a " + f.type);
+        return f;
+    }
+
+    // Times every exchange on a context and counts it by status. Add it first so requests turned
+    // away by later filters (e.g. load shedding) are counted too.
+    public static Filter httpFilter(String route) {
+        String labels = "route=\"" + escapeLabel(route) + "\"";
+        Histogram latency = timer("resort_http_request_duration_seconds", "Time from request dispatch until the handler returned.", labels);
+        // Indexed by status code (slot 0 for none); each counter is looked up once, on first use,
+        // so recording a request builds no label strings.
+        Counter[] byStatus = new Counter[600];
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+                long started = System.nanoTime();
+                try {
+                    chain.doFilter(ex);
+                } finally {
+                    latency.observeSince(started);
+                    int status = ex.getResponseCode();
+                    int slot = status >= 100 && status < byStatus.length ? status : 0;
+                    Counter requests = byStatus[slot];
+                    if (requests == null) {
+                        // Racing threads get the same registered counter back.
+                        requests = counter("resort_http_requests_total", "HTTP requests by route and response status.",
+                                labels + ",status=\"" + (slot == 0 ? "none" : String.valueOf(slot)) + "\"");
+                        byStatus[slot] = requests;
+                    }
+                    requests.increment();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Records request counts and latency for " + route;
+            }
+        };
+    }
+
+    public static String prometheusText() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family f : FAMILIES.values()) {
+            sb.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+            for (Map.Entry<String, Object> e : new java.util.TreeMap<>(f.series).entrySet()) {
+                String labels = e.getKey();
+                Object s = e.getValue();
+                if (s instanceof Counter) {
+                    sample(sb, f.name, labels, null, ((Counter) s).get());
+                } else if (s instanceof LongSupplier) {
+                    sample(sb, f.name, labels, null, ((LongSupplier) s).getAsLong());
+                } else {
+                    Histogram h = (Histogram) s;
+                    long cumulative = 0;
+                    for (int i = 0; i <= h.bounds.length; i++) {
+                        cumulative += h.buckets[i].sum();
+                        String le = i < h.bounds.length ? number(h.bounds[i] / h.scale) : "+Inf";
+                        sample(sb, f.name + "_bucket", labels, "le=\"" + le + "\"", cumulative);
+                    }
+                    sb.append(f.name).append("_sum").append(labelSet(labels, null)).append(' ')
+                            .append(number(h.sum.sum() / h.scale)).append('\n');
+                    sample(sb, f.name + "_count", labels, null, h.count.sum());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, String extra, long value) {
+        sb.append(name).append(labelSet(labels, extra)).append(' ').append(value).append('\n');
+    }
+
+    private static String labelSet(String labels, String extra) {
+        if (labels.isEmpty() && extra == null) return "";
+        if (labels.isEmpty()) return "{" + extra + "}";
+        return extra == null ? "{" + labels + "}" : "{" + labels + "," + extra + "}";
+    }
+
+    private static String number(double v) {
+        return java.math.BigDecimal.valueOf(v).stripTrailingZeros().toPlainString();
+    }
+
+    private static String escapeLabel(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
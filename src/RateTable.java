@@ -0,0 +1,154 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable nightly price list. Every room type gets an int[] of rates indexed by
+// epoch day - WINDOW_START, so a per-night lookup inside the window is one array read.
+public final class RateTable {
+    static final long WINDOW_START = LocalDate.of(2000, 1, 1).toEpochDay();
+    static final int WINDOW_DAYS = 1 << 15;
+
+    public static final class Season {
+        public final LocalDate from;
+        public final LocalDate to;
+        public final int rate;
+
+        public Season(LocalDate from, LocalDate to, int rate) {
+            this.from = from;
+            this.to = to;
+            this.rate = rate;
+        }
+    }
+
+    public static final class TypeRates {
+        public final String roomType;
+        public final int baseRate;
+        // 0 when the type has no weekend rate.
+        public final int weekendRate;
+        public final List<Season> seasons;
+        final int[] nightly;
+        // prefix[i] is the sum of nightly[0..i), so any stay inside the window costs two reads.
+        final long[] prefix;
+
+        TypeRates(String roomType, int baseRate, int weekendRate, List<Season> seasons) {
+            this.roomType = roomType;
+            this.baseRate = baseRate;
+            this.weekendRate = weekendRate;
+            this.seasons = Collections.unmodifiableList(new ArrayList<>(seasons));
+            this.nightly = new int[WINDOW_DAYS];
+            this.prefix = new long[WINDOW_DAYS + 1];
+            for (int i = 0; i < WINDOW_DAYS; i++) {
+                nightly[i] = compute(LocalDate.ofEpochDay(WINDOW_START + i));
+                prefix[i + 1] = prefix[i] + nightly[i];
+            }
+        }
+
+        // Seasons win over weekend rates, which win over the base rate; later seasons win ties.
+        int compute(LocalDate night) {
+            for (int i = seasons.size() - 1; i >= 0; i--) {
+                Season s = seasons.get(i);
+                if (!night.isBefore(s.from) && !night.isAfter(s.to)) return s.rate;
+            }
+            if (weekendRate > 0) {
+                DayOfWeek d = night.getDayOfWeek();
+                if (d == DayOfWeek.FRIDAY || d == DayOfWeek.SATURDAY) return weekendRate;
+            }
+            return baseRate;
+        }
+
+        public int rateFor(LocalDate night) {
+            long off = night.toEpochDay() - WINDOW_START;
+            if (off >= 0 && off < WINDOW_DAYS) return nightly[(int) off];
+            return compute(night);
+        }
+
+        // Total for the nights [checkIn, checkOut).
+        public long stayTotal(LocalDate checkIn, LocalDate checkOut) {
+            return stayTotal(checkIn.toEpochDay(), checkOut.toEpochDay());
+        }
+
+        // Same, with epoch days, for scans over ReservationColumns.
+        public long stayTotal(long checkInDay, long checkOutDay) {
+            long lo = checkInDay - WINDOW_START;
+            long hi = checkOutDay - WINDOW_START;
+            if (hi <= lo) return 0;
+            if (lo >= 0 && hi <= WINDOW_DAYS) return prefix[(int) hi] - prefix[(int) lo];
+            long total = 0;
+            for (long d = checkInDay; d < checkOutDay; d++) total += rateFor(LocalDate.ofEpochDay(d));
+            return total;
+        }
+    }
+
+    private final Map<String, TypeRates> types;
+    private final byte[] ratesJson;
+    private final String etag;
+
+    RateTable(Map<String, TypeRates> types) {
+        this.types = Collections.unmodifiableMap(new LinkedHashMap<>(types));
+        this.ratesJson = serialize(this.types).getBytes(StandardCharsets.UTF_8);
+        this.etag = etagFor(ratesJson);
+    }
+
+    public Map<String, TypeRates> types() {
+        return types;
+    }
+
+    public TypeRates type(String roomType) {
+        TypeRates t = types.get(roomType);
+        if (t == null) {
+            throw new IllegalArgumentException("Unknown room type: " + roomType);
+        }
+        return t;
+    }
+
+    // The complete /api/rates response body, built once per table.
+    public byte[] ratesJson() {
+        return ratesJson;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    private static String serialize(Map<String, TypeRates> types) {
+        StringBuilder arr = new StringBuilder();
+        arr.append("[");
+        boolean first = true;
+        for (TypeRates t : types.values()) {
+            if (!first) arr.append(",");
+            first = false;
+            arr.append("{\"roomType\":").append(JsonUtil.jsonString(t.roomType))
+                    .append(",\"ratePerNight\":").append(t.baseRate);
+            if (t.weekendRate > 0) arr.append(",\"weekendRatePerNight\":").append(t.weekendRate);
+            arr.append(",\"seasons\":[");
+            for (int i = 0; i < t.seasons.size(); i++) {
+                Season s = t.seasons.get(i);
+                if (i > 0) arr.append(",");
+                arr.append("{\"from\":").append(JsonUtil.jsonString(s.from.toString()))
+                        .append(",\"to\":").append(JsonUtil.jsonString(s.to.toString()))
+                        .append(",\"ratePerNight\":").append(s.rate).append("}");
+            }
+            arr.append("]}");
+        }
+        arr.append("]");
+        return "{\"ok\":true,\"rates\":" + arr + "}";
+    }
+
+    static String etagFor(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) sb.append(String.format("%02x", digest[i]));
+            return sb.append("\"").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Admin reports computed over a ReservationColumns snapshot. Rows are split across the common
+// fork-join pool and each leaf sums into its own long[]; finished reports are kept as JSON bytes
+// until the data version or the rate table changes.
+public class ReportEngine {
+    private static final int LEAF_ROWS = 4096;
+    private static final int MAX_CACHED = 64;
+    private static final int MAX_MONTHS = 1200;
+
+    public enum GroupBy {
+        ROOM_TYPE("roomType"),
+        MONTH("month"),
+        OWNER("owner");
+
+        // As written in the groupBy query parameter and the report JSON.
+        public final String param;
+
+        GroupBy(String param) {
+            this.param = param;
+        }
+
+        public static GroupBy named(String param) {
+            for (GroupBy g : values()) {
+                if (g.param.equals(param)) return g;
+            }
+            throw new IllegalArgumentException("groupBy must be roomType, month or owner");
+        }
+    }
+
+    public static final class Report {
+        public final long version;
+        public final byte[] json;
+        public final String etag;
+        final RateTable rates;
+
+        Report(long version, RateTable rates, byte[] json) {
+            this.version = version;
+            this.rates = rates;
+            this.json = json;
+            this.etag = RateTable.etagFor(json);
+        }
+    }
+
+    private interface RowAccumulator {
+        void accumulate(int row, long[] acc);
+    }
+
+    // Fork-join tasks are never serialised.
+    @SuppressWarnings("serial")
+    private static final class Reduce extends RecursiveTask<long[]> {
+        private final RowAccumulator accumulator;
+        private final int width;
+        private final int lo;
+        private final int hi;
+
+        Reduce(RowAccumulator accumulator, int width, int lo, int hi) {
+            this.accumulator = accumulator;
+            this.width = width;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (hi - lo <= LEAF_ROWS) {
+                long[] acc = new long[width];
+                for (int row = lo; row < hi; row++) accumulator.accumulate(row, acc);
+                return acc;
+            }
+            int mid = (lo + hi) >>> 1;
+            Reduce left = new Reduce(accumulator, width, lo, mid);
+            left.fork();
+            long[] acc = new Reduce(accumulator, width, mid, hi).compute();
+            long[] other = left.join();
+            for (int i = 0; i < width; i++) acc[i] += other[i];
+            return acc;
+        }
+    }
+
+    private final ReservationColumns columns;
+    private final RoomInventory inventory;
+    private final Map<String, Report> cache = new ConcurrentHashMap<>();
+
+    public ReportEngine(ReservationColumns columns, RoomInventory inventory) {
+        this.columns = columns;
+        this.inventory = inventory;
+    }
+
+    // Room-nights sold per room type for the nights [from, to), against rooms x nights capacity.
+    public Report occupancy(LocalDate from, LocalDate to) throws IOException {
+        if (!to.isAfter(from)) throw new IllegalArgumentException("To date must be after from date");
+        ReservationColumns.Snapshot s = columns.snapshot();
+        String key = "occupancy|" + from + "|" + to;
+        Report cached = cache.get(key);
+        if (cached != null && cached.version == s.version) return cached;
+
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        int types = s.roomTypes.length;
+        // acc[t] = room-nights of type t inside the range, acc[types + t] = stays touching it.
+        long[] acc = reduce(s, 2 * types, (row, a) -> {
+            int nights = Math.min(s.checkOut[row], toDay) - Math.max(s.checkIn[row], fromDay);
+            if (nights <= 0) return;
+            int t = s.roomTypeId(row);
+            a[t] += nights;
+            a[types + t]++;
+        });
+
+        long days = toDay - fromDay;
+        long totalSold = 0;
+        long totalCapacity = 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonWriter w = new JsonWriter(out)) {
+            w.beginObject().field("ok", true)
+                    .field("from", from.toString())
+                    .field("to", to.toString())
+                    .field("nights", days)
+                    .field("version", s.version)
+                    .name("roomTypes").beginArray();
+            for (String type : inventory.roomTypes()) {
+                int t = s.roomTypeId(type);
+                long sold = t < 0 ? 0 : acc[t];
+                long capacity = days * inventory.rooms(type);
+                totalSold += sold;
+                totalCapacity += capacity;
+                w.beginObject()
+                        .field("roomType", type)
+                        .field("rooms", inventory.rooms(type))
+                        .field("reservations", t < 0 ? 0 : acc[types + t])
+                        .field("roomNightsSold", sold)
+                        .field("capacity", capacity)
+                        .name("occupancyPercent").rawValue(percent(sold, capacity))
+                        .endObject();
+            }
+            w.endArray()
+                    .field("roomNightsSold", totalSold)
+                    .field("capacity", totalCapacity)
+                    .name("occupancyPercent").rawValue(percent(totalSold, totalCapacity))
+                    .endObject();
+        }
+        return remember(key, new Report(s.version, null, out.toByteArray()));
+    }
+
+    // Revenue for nights inside [from, to), or over all stays when no range is given. Month
+    // grouping splits a stay across the months its nights fall in.
+    public Report revenue(GroupBy groupBy, LocalDate from, LocalDate to) throws IOException {
+        if (from != null && to != null && !to.isAfter(from)) {
+            throw new IllegalArgumentException("To date must be after from date");
+        }
+        ReservationColumns.Snapshot s = columns.snapshot();
+        RateTable rates = RoomRates.current();
+        String key = "revenue|" + groupBy + "|" + from + "|" + to;
+        Report cached = cache.get(key);
+        if (cached != null && cached.version == s.version && cached.rates == rates) return cached;
+
+        int fromDay = from != null ? (int) from.toEpochDay() : Integer.MIN_VALUE;
+        int toDay = to != null ? (int) to.toEpochDay() : Integer.MAX_VALUE;
+        if (from == null || to == null) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int row = 0; row < s.size; row++) {
+                min = Math.min(min, s.checkIn[row]);
+                max = Math.max(max, s.checkOut[row]);
+            }
+            if (s.size == 0) min = max = (int) LocalDate.now().toEpochDay();
+            if (from == null) fromDay = Math.min(min, toDay);
+            if (to == null) toDay = Math.max(max, fromDay);
+        }
+        int lo = fromDay;
+        int hi = toDay;
+
+        RateTable.TypeRates[] byType = new RateTable.TypeRates[s.roomTypes.length];
+        for (int t = 0; t < byType.length; t++) byType[t] = rates.types().get(s.roomTypes[t]);
+
+        String[] keys;
+        int[] monthStarts = null;
+        if (groupBy == GroupBy.MONTH) {
+            YearMonth first = YearMonth.from(LocalDate.ofEpochDay(lo));
+            YearMonth last = YearMonth.from(LocalDate.ofEpochDay(Math.max(lo, hi - 1)));
+            long months = first.until(last, java.time.temporal.ChronoUnit.MONTHS) + 1;
+            if (months > MAX_MONTHS) throw new IllegalArgumentException("Date range is too large for monthly grouping");
+            keys = new String[(int) months];
+            monthStarts = new int[keys.length + 1];
+            for (int i = 0; i < keys.length; i++) {
+                YearMonth m = first.plusMonths(i);
+                keys[i] = m.toString();
+                monthStarts[i] = (int) m.atDay(1).toEpochDay();
+            }
+            monthStarts[keys.length] = (int) first.plusMonths(keys.length).atDay(1).toEpochDay();
+        } else if (groupBy == GroupBy.OWNER) {
+            keys = s.owners;
+        } else {
+            keys = s.roomTypes;
+        }
+
+        int groups = keys.length;
+        int[] starts = monthStarts;
+        // acc[3g] = stays, acc[3g + 1] = nights, acc[3g + 2] = revenue for group g.
+        long[] acc = reduce(s, 3 * groups, (row, a) -> {
+            int in = Math.max(s.checkIn[row], lo);
+            int out = Math.min(s.checkOut[row], hi);
+            if (out <= in) return;
+            RateTable.TypeRates type = byType[s.roomTypeId(row)];
+            if (type == null) return;
+            if (starts == null) {
+                int g = groupBy == GroupBy.OWNER ? s.owner[row] : s.roomTypeId(row);
+                a[3 * g]++;
+                a[3 * g + 1] += out - in;
+                a[3 * g + 2] += type.stayTotal(in, out);
+                return;
+            }
+            int m = Arrays.binarySearch(starts, in);
+            if (m < 0) m = -m - 2;
+            for (; m < groups && starts[m] < out; m++) {
+                int a0 = Math.max(in, starts[m]);
+                int a1 = Math.min(out, starts[m + 1]);
+                a[3 * m]++;
+                a[3 * m + 1] += a1 - a0;
+                a[3 * m + 2] += type.stayTotal(a0, a1);
+            }
+        });
+
+        long totalNights = 0;
+        long totalRevenue = 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonWriter w = new JsonWriter(out)) {
+            w.beginObject().field("ok", true)
+                    .field("groupBy", groupBy.param)
+                    .field("from", LocalDate.ofEpochDay(lo).toString())
+                    .field("to", LocalDate.ofEpochDay(hi).toString())
+                    .field("version", s.version)
+                    .name("groups").beginArray();
+            for (int g = 0; g < groups; g++) {
+                if (groupBy != GroupBy.MONTH && acc[3 * g] == 0) continue;
+                totalNights += acc[3 * g + 1];
+                totalRevenue += acc[3 * g + 2];
+                w.beginObject()
+                        .field("key", keys[g])
+                        .field("reservations", acc[3 * g])
+                        .field("nights", acc[3 * g + 1])
+                        .field("revenue", acc[3 * g + 2])
+                        .endObject();
+            }
+            w.endArray()
+                    .field("totalNights", totalNights)
+                    .field("totalRevenue", totalRevenue)
+                    .endObject();
+        }
+        return remember(key, new Report(s.version, rates, out.toByteArray()));
+    }
+
+    private static long[] reduce(ReservationColumns.Snapshot s, int width, RowAccumulator accumulator) {
+        return ForkJoinPool.commonPool().invoke(new Reduce(accumulator, width, 0, s.size));
+    }
+
+    private Report remember(String key, Report report) {
+        if (cache.size() >= MAX_CACHED) cache.clear();
+        cache.put(key, report);
+        return report;
+    }
+
+    private static String percent(long part, long whole) {
+        return whole == 0 ? "0" : String.format(Locale.ROOT, "%.2f", 100.0 * part / whole);
+    }
+}
@@ -0,0 +1,151 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestExecutor implements Executor {
+    public enum Mode {
+        VIRTUAL,
+        POOL,
+        SINGLE
+    }
+
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+    // 503s waiting for the shedder thread; past this the connection is closed without a reply.
+    private static final int SHED_QUEUE = 64;
+    private static final Metrics.Counter DROPPED = Metrics.counter("resort_http_connections_dropped_total",
+            "Connections closed unanswered because both the request and the 503 queues were full.");
+
+    private final Mode mode;
+    private final int maxPending;
+    private final ExecutorService workers;
+    private final ExecutorService shedder;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public RequestExecutor(Mode mode, int poolSize, int maxPending) {
+        this.mode = mode;
+        this.maxPending = maxPending;
+        switch (mode) {
+            case VIRTUAL:
+                workers = Executors.newVirtualThreadPerTaskExecutor();
+                break;
+            case POOL:
+                workers = Executors.newFixedThreadPool(Math.max(1, poolSize), daemonThreads("http-worker"));
+                break;
+            default:
+                workers = Executors.newSingleThreadExecutor(daemonThreads("http-worker"));
+        }
+        shedder = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(SHED_QUEUE),
+                daemonThreads("http-shedder"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static RequestExecutor fromConfig(Map<String, String> options) {
+        String modeStr = options.getOrDefault("executor", System.getProperty("resort.executor", "virtual"));
+        Mode mode;
+        try {
+            mode = Mode.valueOf(modeStr.trim().toUpperCase());
+        } catch (IllegalArgumentException ignored) {
+            mode = Mode.VIRTUAL;
+        }
+        int poolSize = intOption(options, "pool-size", "resort.poolSize", Runtime.getRuntime().availableProcessors() * 4);
+        int maxPending = intOption(options, "max-queue", "resort.maxQueue", 1024);
+        return new RequestExecutor(mode, poolSize, maxPending);
+    }
+
+    private static int intOption(Map<String, String> options, String flag, String property, int def) {
+        String v = options.getOrDefault(flag, System.getProperty(property));
+        if (v == null) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException ignored) {
+            return def;
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public int maxPending() {
+        return maxPending;
+    }
+
+    public int pending() {
+        return pending.get();
+    }
+
+    // Over the limit the exchange still has to be answered, so it runs on the shedder thread
+    // where sheddingFilter() replies 503 without invoking the handler. If the 503s are backed up
+    // too, the rejection propagates and the server's dispatcher closes the connection instead.
+    @Override
+    public void execute(Runnable task) {
+        if (maxPending > 0 && pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            try {
+                shedder.execute(() -> {
+                    SHEDDING.set(Boolean.TRUE);
+                    try {
+                        task.run();
+                    } finally {
+                        SHEDDING.remove();
+                    }
+                });
+            } catch (RejectedExecutionException full) {
+                DROPPED.increment();
+                throw full;
+            }
+            return;
+        }
+        if (maxPending <= 0) pending.incrementAndGet();
+        workers.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    public Filter sheddingFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+                if (SHEDDING.get() == null) {
+                    chain.doFilter(ex);
+                    return;
+                }
+                ex.getResponseHeaders().set("Retry-After", "1");
+                HttpUtil.sendJson(ex, 503, "{\"ok\":false,\"message\":\"Server is busy. Please try again.\"}");
+            }
+
+            @Override
+            public String description() {
+                return "Rejects requests that arrive while the request queue is full";
+            }
+        };
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        shedder.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
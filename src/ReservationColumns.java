@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Column-per-field copy of the reservation book for reports: dates as epoch days, room type and
+// owner as small dictionary ids. Kept in step with the store through its listener callbacks.
+// Rows are packed; deleting a row moves the last row into its slot.
+//
+// Writers hold the monitor only to change a row and note it in a list of touched rows. snapshot()
+// takes those rows under the monitor and builds the new copy outside it, patching the previous
+// snapshot, so a report never holds up the store's write path with a full copy. Only when more
+// rows changed than there are rows (or on a reload) is the whole table copied under the monitor.
+public class ReservationColumns implements ReservationStore.Listener {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> rowOf = new HashMap<>();
+    private final Map<String, Integer> roomTypeIds = new HashMap<>();
+    private final List<String> roomTypes = new ArrayList<>();
+    private final Map<String, Integer> ownerIds = new HashMap<>();
+    private final List<String> owners = new ArrayList<>();
+
+    private String[] numbers = new String[INITIAL_CAPACITY];
+    private int[] checkIn = new int[INITIAL_CAPACITY];
+    private int[] checkOut = new int[INITIAL_CAPACITY];
+    private byte[] roomType = new byte[INITIAL_CAPACITY];
+    private int[] owner = new int[INITIAL_CAPACITY];
+    private int size;
+    private volatile long version;
+    private volatile Snapshot snapshot;
+    // Rows changed since the last snapshot was taken; fullCopy once that stops paying off.
+    private int[] dirty = new int[64];
+    private int dirtyCount;
+    private boolean fullCopy = true;
+    // One snapshot is built at a time, since each starts from the last one.
+    private final Object building = new Object();
+
+    // Immutable copy of the columns at one version. Row i is the same reservation in every array.
+    public static final class Snapshot {
+        public final long version;
+        public final int size;
+        public final int[] checkIn;
+        public final int[] checkOut;
+        public final byte[] roomType;
+        public final int[] owner;
+        public final String[] roomTypes;
+        public final String[] owners;
+
+        Snapshot(long version, int size, int[] checkIn, int[] checkOut, byte[] roomType, int[] owner, String[] roomTypes, String[] owners) {
+            this.version = version;
+            this.size = size;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+            this.roomType = roomType;
+            this.owner = owner;
+            this.roomTypes = roomTypes;
+            this.owners = owners;
+        }
+
+        public int roomTypeId(int row) {
+            return roomType[row] & 0xFF;
+        }
+
+        public int roomTypeId(String name) {
+            for (int i = 0; i < roomTypes.length; i++) {
+                if (roomTypes[i].equals(name)) return i;
+            }
+            return -1;
+        }
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Copies only when something changed since the last call, so repeated reports share one copy.
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null && current.version == version) return current;
+        synchronized (building) {
+            Snapshot base = snapshot;
+            Snapshot next;
+            int changed;
+            int[] rows;
+            int[] rowCheckIn;
+            int[] rowCheckOut;
+            byte[] rowRoomType;
+            int[] rowOwner;
+            String[] newRoomTypes;
+            String[] newOwners;
+            long at;
+            int n;
+            synchronized (this) {
+                if (base != null && base.version == version) return base;
+                at = version;
+                n = size;
+                if (fullCopy || base == null) {
+                    next = new Snapshot(at, n,
+                            Arrays.copyOf(checkIn, n),
+                            Arrays.copyOf(checkOut, n),
+                            Arrays.copyOf(roomType, n),
+                            Arrays.copyOf(owner, n),
+                            roomTypes.toArray(new String[0]),
+                            owners.toArray(new String[0]));
+                    fullCopy = false;
+                    dirtyCount = 0;
+                    snapshot = next;
+                    return next;
+                }
+                changed = dirtyCount;
+                rows = new int[changed];
+                rowCheckIn = new int[changed];
+                rowCheckOut = new int[changed];
+                rowRoomType = new byte[changed];
+                rowOwner = new int[changed];
+                for (int i = 0; i < changed; i++) {
+                    int row = dirty[i];
+                    rows[i] = row;
+                    if (row >= n) continue;
+                    rowCheckIn[i] = checkIn[row];
+                    rowCheckOut[i] = checkOut[row];
+                    rowRoomType[i] = roomType[row];
+                    rowOwner[i] = owner[row];
+                }
+                dirtyCount = 0;
+                // Dictionaries only ever grow, so the new names are the tail past the last snapshot's.
+                newRoomTypes = roomTypes.subList(base.roomTypes.length, roomTypes.size()).toArray(new String[0]);
+                newOwners = owners.subList(base.owners.length, owners.size()).toArray(new String[0]);
+            }
+            int[] ci = Arrays.copyOf(base.checkIn, n);
+            int[] co = Arrays.copyOf(base.checkOut, n);
+            byte[] rt = Arrays.copyOf(base.roomType, n);
+            int[] ow = Arrays.copyOf(base.owner, n);
+            for (int i = 0; i < changed; i++) {
+                int row = rows[i];
+                if (row >= n) continue;
+                ci[row] = rowCheckIn[i];
+                co[row] = rowCheckOut[i];
+                rt[row] = rowRoomType[i];
+                ow[row] = rowOwner[i];
+            }
+            next = new Snapshot(at, n, ci, co, rt, ow, append(base.roomTypes, newRoomTypes), append(base.owners, newOwners));
+            snapshot = next;
+            return next;
+        }
+    }
+
+    @Override
+    public synchronized void added(Reservation r) {
+        if (size == numbers.length) grow();
+        rowOf.put(r.reservationNumber, size);
+        write(size, r);
+        touched(size++);
+    }
+
+    @Override
+    public synchronized void updated(Reservation old, Reservation r) {
+        Integer row = rowOf.get(old.reservationNumber);
+        if (row == null) {
+            added(r);
+            return;
+        }
+        write(row, r);
+        touched(row);
+    }
+
+    @Override
+    public synchronized void removed(Reservation old) {
+        Integer row = rowOf.remove(old.reservationNumber);
+        if (row == null) return;
+        int last = --size;
+        if (row != last) {
+            numbers[row] = numbers[last];
+            checkIn[row] = checkIn[last];
+            checkOut[row] = checkOut[last];
+            roomType[row] = roomType[last];
+            owner[row] = owner[last];
+            rowOf.put(numbers[row], row);
+            touched(row);
+        } else {
+            version++;
+        }
+        numbers[last] = null;
+    }
+
+    @Override
+    public synchronized void reloaded(java.util.Collection<Reservation> all) {
+        rowOf.clear();
+        Arrays.fill(numbers, 0, size, null);
+        size = 0;
+        for (Reservation r : all) {
+            if (size == numbers.length) grow();
+            rowOf.put(r.reservationNumber, size);
+            write(size++, r);
+        }
+        fullCopy = true;
+        version++;
+    }
+
+    private void touched(int row) {
+        version++;
+        if (fullCopy) return;
+        if (dirtyCount == dirty.length) {
+            if (dirty.length >= size) {
+                fullCopy = true;
+                return;
+            }
+            dirty = Arrays.copyOf(dirty, dirty.length * 2);
+        }
+        dirty[dirtyCount++] = row;
+    }
+
+    private static String[] append(String[] names, String[] more) {
+        if (more.length == 0) return names;
+        String[] all = Arrays.copyOf(names, names.length + more.length);
+        System.arraycopy(more, 0, all, names.length, more.length);
+        return all;
+    }
+
+    private void write(int row, Reservation r) {
+        numbers[row] = r.reservationNumber;
+        checkIn[row] = (int) r.checkIn.toEpochDay();
+        checkOut[row] = (int) r.checkOut.toEpochDay();
+        roomType[row] = (byte) intern(roomTypeIds, roomTypes, r.roomType, 256);
+        owner[row] = intern(ownerIds, owners, r.ownerUsername == null ? "" : r.ownerUsername, Integer.MAX_VALUE);
+    }
+
+    private static int intern(Map<String, Integer> ids, List<String> names, String name, int limit) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        if (names.size() >= limit) {
+            throw new IllegalStateException("Too many distinct values for column: " + name);
+        }
+        names.add(name);
+        ids.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    private void grow() {
+        int capacity = numbers.length * 2;
+        numbers = Arrays.copyOf(numbers, capacity);
+        checkIn = Arrays.copyOf(checkIn, capacity);
+        checkOut = Arrays.copyOf(checkOut, capacity);
+        roomType = Arrays.copyOf(roomType, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+    }
+}
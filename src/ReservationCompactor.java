@@ -0,0 +1,49 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ReservationCompactor {
+    private final ReservationStore store;
+    private final long minGarbageRecords;
+    private final double minGarbageRatio;
+    private final ScheduledExecutorService scheduler;
+
+    public ReservationCompactor(ReservationStore store, long minGarbageRecords, double minGarbageRatio) {
+        this.store = store;
+        this.minGarbageRecords = minGarbageRecords;
+        this.minGarbageRatio = minGarbageRatio;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reservation-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start(long intervalSeconds) {
+        scheduler.scheduleWithFixedDelay(this::compactIfNeeded, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean needsCompaction() {
+        long total = store.logRecords();
+        long garbage = total - store.liveRecords();
+        if (garbage < minGarbageRecords || total == 0) return false;
+        return (double) garbage / total >= minGarbageRatio;
+    }
+
+    private void compactIfNeeded() {
+        try {
+            if (!needsCompaction()) return;
+            ReservationStore.CompactionStats stats = store.compact();
+            if (stats != null) {
+                System.out.println("Compacted reservations: " + stats.recordsBefore + " -> " + stats.recordsAfter
+                        + " records, " + stats.bytesReclaimed() + " bytes reclaimed in " + stats.durationMillis + " ms");
+            }
+        } catch (Exception e) {
+            System.err.println("Reservation compaction failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+// On-disk encoding of the reservation log. A file is a preamble followed by upsert and
+// tombstone records; an Encoder is bound to one file and may carry per-file state.
+public interface ReservationFormat {
+    interface Encoder {
+        // Bytes a new file must start with to carry this encoder's state.
+        byte[] preamble();
+
+        byte[] upsert(Reservation r);
+
+        byte[] tombstone(String reservationNumber);
+
+        // Remembers the current state; abort() returns to it when the bytes encoded since were not
+        // written, e.g. a group of records that failed to reach the log together.
+        void mark();
+
+        void abort();
+
+        // An independent encoder with the same state, used to write a compacted copy of the file.
+        Encoder copy();
+    }
+
+    interface RecordVisitor {
+        void upsert(Reservation r);
+
+        void tombstone(String reservationNumber);
+
+        // Called once at the end with the length of the intact prefix of the file. Anything after
+        // it is a record cut short by a crash (or damaged) and was not replayed.
+        default void end(long validBytes) {
+        }
+    }
+
+    String name();
+
+    Encoder newEncoder();
+
+    // Feeds every record to the visitor and returns an encoder that can keep appending to the file.
+    Encoder replay(InputStream in, RecordVisitor visitor) throws IOException;
+
+    static ReservationFormat named(String name) {
+        if (name == null || name.trim().isEmpty() || name.trim().equalsIgnoreCase("text")) return new TextReservationFormat();
+        if (name.trim().equalsIgnoreCase("binary")) return new BinaryReservationFormat();
+        throw new IllegalArgumentException("Unknown storage format: " + name);
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Streams reservation rows from an NDJSON or CSV body into the store. Rows are validated one by
+// one and stored in batches through ReservationStore.addAll, so each batch costs one log write.
+// Bad rows are counted and reported; they never stop the rest of the import.
+public class ReservationImport {
+    public static final int BATCH_SIZE = 500;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    public static final class RowError {
+        public final long row;
+        public final String reservationNumber;
+        public final String message;
+
+        public RowError(long row, String reservationNumber, String message) {
+            this.row = row;
+            this.reservationNumber = reservationNumber;
+            this.message = message;
+        }
+    }
+
+    private final ReservationStore store;
+    private final Function<Map<String, String>, Reservation> parser;
+    private final List<Reservation> batch = new ArrayList<>();
+    private final List<Long> batchRows = new ArrayList<>();
+    private final List<RowError> errors = new ArrayList<>();
+    private long imported;
+    private long failed;
+
+    public ReservationImport(ReservationStore store, Function<Map<String, String>, Reservation> parser) {
+        this.store = store;
+        this.parser = parser;
+    }
+
+    // One JSON object per line; blank lines are skipped. Rows are numbered by line.
+    public void readNdjson(BufferedReader in) throws IOException {
+        String line;
+        long row = 0;
+        while ((line = in.readLine()) != null) {
+            row++;
+            if (line.isBlank()) continue;
+            Map<String, String> fields;
+            try {
+                fields = JsonUtil.parseFlatObject(line);
+            } catch (IllegalArgumentException e) {
+                reject(row, null, e.getMessage());
+                continue;
+            }
+            accept(row, fields);
+        }
+        flush();
+    }
+
+    // The first record names the columns. Rows are numbered by record, the header being row 1.
+    public void readCsv(BufferedReader in) throws IOException {
+        List<String> header = CsvUtil.readRow(in);
+        if (header == null) throw new IllegalArgumentException("CSV header row is required");
+        long row = 1;
+        List<String> values;
+        while (true) {
+            try {
+                values = CsvUtil.readRow(in);
+            } catch (IllegalArgumentException e) {
+                // An unclosed quote runs to the end of the input, so everything left is one bad row.
+                reject(row + 1, null, e.getMessage() + "; the rest of the file was not imported");
+                break;
+            }
+            if (values == null) break;
+            row++;
+            if (values.size() == 1 && values.get(0).isBlank()) continue;
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                fields.put(header.get(i).trim(), values.get(i));
+            }
+            accept(row, fields);
+        }
+        flush();
+    }
+
+    public long imported() {
+        return imported;
+    }
+
+    public long failed() {
+        return failed;
+    }
+
+    // At most 1000 errors, in row order; failed() has the full count.
+    public List<RowError> errors() {
+        errors.sort((a, b) -> Long.compare(a.row, b.row));
+        return errors;
+    }
+
+    private void accept(long row, Map<String, String> fields) throws IOException {
+        Reservation r;
+        try {
+            r = parser.apply(fields);
+        } catch (DateTimeParseException e) {
+            reject(row, fields.get("reservationNumber"), "Dates must be in yyyy-MM-dd format");
+            return;
+        } catch (IllegalArgumentException e) {
+            reject(row, fields.get("reservationNumber"), e.getMessage());
+            return;
+        }
+        batch.add(r);
+        batchRows.add(row);
+        if (batch.size() >= BATCH_SIZE) flush();
+    }
+
+    private void flush() throws IOException {
+        if (batch.isEmpty()) return;
+        List<String> results = store.addAll(batch);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) imported++;
+            else reject(batchRows.get(i), batch.get(i).reservationNumber, results.get(i));
+        }
+        batch.clear();
+        batchRows.clear();
+    }
+
+    private void reject(long row, String reservationNumber, String message) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new RowError(row, reservationNumber, message));
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Sorted views of the reservation book, one per sort field, globally and per partition: per owner,
+// per room type and per owner and room type together, so those filters never walk rows they drop.
+// Callers serialise mutations per reservation number; reads are lock-free.
+//
+// Date filters narrow the walk only when sorting by a date. With another sort, from/to are applied
+// row by row over the partition, so such a page costs up to the rows skipped, not O(page + log n).
+public class ReservationIndex {
+    private final Map<ReservationQuery.SortField, NavigableSet<Reservation>> all = newSets();
+    // Emptied partitions are dropped so owners and room types no longer booked do not linger.
+    private final Map<String, Map<ReservationQuery.SortField, NavigableSet<Reservation>>> partitions = new ConcurrentHashMap<>();
+
+    public void add(Reservation r) {
+        for (NavigableSet<Reservation> set : all.values()) set.add(r);
+        for (String key : partitionKeys(r)) {
+            // Inside compute, so a concurrent remove cannot drop the partition between the two steps.
+            partitions.compute(key, (k, sets) -> {
+                if (sets == null) sets = newSets();
+                for (NavigableSet<Reservation> set : sets.values()) set.add(r);
+                return sets;
+            });
+        }
+    }
+
+    public void remove(Reservation r) {
+        for (NavigableSet<Reservation> set : all.values()) set.remove(r);
+        for (String key : partitionKeys(r)) {
+            partitions.computeIfPresent(key, (k, sets) -> {
+                for (NavigableSet<Reservation> set : sets.values()) set.remove(r);
+                return sets.get(ReservationQuery.SortField.RESERVATION_NUMBER).isEmpty() ? null : sets;
+            });
+        }
+    }
+
+    public void clear() {
+        for (NavigableSet<Reservation> set : all.values()) set.clear();
+        partitions.clear();
+    }
+
+    public NavigableSet<Reservation> ordered() {
+        return Collections.unmodifiableNavigableSet(all.get(ReservationQuery.SortField.RESERVATION_NUMBER));
+    }
+
+    // Starts from the partition matching the owner and room type filters, narrows to the key range
+    // implied by the filters that line up with the sort field and the cursor, then filters the rest
+    // lazily.
+    public Iterator<Reservation> scan(ReservationQuery q) {
+        Map<ReservationQuery.SortField, NavigableSet<Reservation>> sets;
+        if (q.ownerUsername != null && q.roomType != null) {
+            sets = partitions.get(ownerAndTypeKey(q.ownerUsername, q.roomType));
+        } else if (q.ownerUsername != null) {
+            sets = partitions.get(ownerKey(q.ownerUsername));
+        } else if (q.roomType != null) {
+            sets = partitions.get(typeKey(q.roomType));
+        } else {
+            sets = all;
+        }
+        if (sets == null) return Collections.emptyIterator();
+        NavigableSet<Reservation> base = sets.get(q.sort);
+
+        // A stay checks out after it checks in, so "to" also caps check-in and "from" check-out.
+        Reservation lo = null;
+        Reservation hi = null;
+        if (q.sort == ReservationQuery.SortField.CHECK_IN || q.sort == ReservationQuery.SortField.CHECK_OUT) {
+            if (q.from != null) lo = q.sort.probe(q.from.toString(), "");
+            if (q.to != null) hi = q.sort.probe(q.to.plusDays(1).toString(), "");
+        } else if (q.sort == ReservationQuery.SortField.GUEST_NAME && q.guestNamePrefix != null) {
+            lo = q.sort.probe(q.guestNamePrefix, "");
+            hi = q.sort.probe(q.guestNamePrefix + Character.MAX_VALUE, "");
+        }
+        // The cursor only narrows the range further; one from outside it (or from > to) must not
+        // make the subset throw.
+        boolean loInclusive = true;
+        if (q.after != null) {
+            if (q.descending) {
+                if (hi == null || q.sort.order.compare(q.after, hi) < 0) hi = q.after;
+            } else if (lo == null || q.sort.order.compare(q.after, lo) >= 0) {
+                lo = q.after;
+                loInclusive = false;
+            }
+        }
+        if (lo != null && hi != null && q.sort.order.compare(lo, hi) >= 0) return Collections.emptyIterator();
+        NavigableSet<Reservation> range = base;
+        if (lo != null) range = range.tailSet(lo, loInclusive);
+        if (hi != null) range = range.headSet(hi, false);
+        Iterator<Reservation> it = q.descending ? range.descendingIterator() : range.iterator();
+        return new Iterator<Reservation>() {
+            private Reservation next = advance();
+
+            private Reservation advance() {
+                while (it.hasNext()) {
+                    Reservation r = it.next();
+                    if (q.matches(r)) return r;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Reservation next() {
+                if (next == null) throw new NoSuchElementException();
+                Reservation r = next;
+                next = advance();
+                return r;
+            }
+        };
+    }
+
+    private static String[] partitionKeys(Reservation r) {
+        String owner = r.ownerUsername == null ? "" : r.ownerUsername;
+        return new String[]{ownerKey(owner), typeKey(r.roomType), ownerAndTypeKey(owner, r.roomType)};
+    }
+
+    private static String ownerKey(String owner) {
+        return "owner\u0000" + owner;
+    }
+
+    private static String typeKey(String roomType) {
+        return "type\u0000" + roomType;
+    }
+
+    private static String ownerAndTypeKey(String owner, String roomType) {
+        return "both\u0000" + owner + '\u0000' + roomType;
+    }
+
+    private static Map<ReservationQuery.SortField, NavigableSet<Reservation>> newSets() {
+        Map<ReservationQuery.SortField, NavigableSet<Reservation>> sets = new EnumMap<>(ReservationQuery.SortField.class);
+        for (ReservationQuery.SortField f : ReservationQuery.SortField.values()) sets.put(f, new ConcurrentSkipListSet<>(f.order));
+        return sets;
+    }
+}
@@ -0,0 +1,154 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+
+public class ReservationQuery {
+    public static final int MAX_LIMIT = 1000;
+
+    public enum SortField {
+        RESERVATION_NUMBER("reservationNumber", Comparator.comparing((Reservation r) -> r.reservationNumber)),
+        CHECK_IN("checkIn", Comparator.comparing((Reservation r) -> r.checkIn).thenComparing(r -> r.reservationNumber)),
+        CHECK_OUT("checkOut", Comparator.comparing((Reservation r) -> r.checkOut).thenComparing(r -> r.reservationNumber)),
+        GUEST_NAME("guestName", Comparator.comparing((Reservation r) -> r.guestName, String.CASE_INSENSITIVE_ORDER).thenComparing(r -> r.reservationNumber));
+
+        public final String param;
+        public final Comparator<Reservation> order;
+
+        SortField(String param, Comparator<Reservation> order) {
+            this.param = param;
+            this.order = order;
+        }
+
+        public static SortField fromParam(String param) {
+            for (SortField f : values()) {
+                if (f.param.equalsIgnoreCase(param)) return f;
+            }
+            throw new IllegalArgumentException("Unknown sort field: " + param);
+        }
+
+        String keyOf(Reservation r) {
+            switch (this) {
+                case CHECK_IN: return r.checkIn.toString();
+                case CHECK_OUT: return r.checkOut.toString();
+                case GUEST_NAME: return r.guestName;
+                default: return r.reservationNumber;
+            }
+        }
+
+        // A reservation that sorts exactly where a row with this key and number would.
+        Reservation probe(String key, String reservationNumber) {
+            LocalDate date = LocalDate.MIN;
+            String name = "";
+            if (this == CHECK_IN || this == CHECK_OUT) date = LocalDate.parse(key);
+            if (this == GUEST_NAME) name = key;
+            return new Reservation(reservationNumber, "", name, "", "", "", date, date);
+        }
+    }
+
+    public final String ownerUsername;
+    public final String roomType;
+    public final String guestNamePrefix;
+    public final LocalDate from;
+    public final LocalDate to;
+    public final SortField sort;
+    public final boolean descending;
+    // 0 means no limit: the whole result set, still streamed in index order.
+    public final int limit;
+    public final Reservation after;
+
+    public ReservationQuery(String ownerUsername, String roomType, String guestNamePrefix, LocalDate from, LocalDate to,
+                            SortField sort, boolean descending, int limit, Reservation after) {
+        this.ownerUsername = ownerUsername;
+        this.roomType = roomType;
+        this.guestNamePrefix = guestNamePrefix;
+        this.from = from;
+        this.to = to;
+        this.sort = sort == null ? SortField.RESERVATION_NUMBER : sort;
+        this.descending = descending;
+        this.limit = limit;
+        this.after = after;
+    }
+
+    // Filters: ownerUsername, roomType, guestName (prefix, case-insensitive), from (check-in on or
+    // after), to (check-out on or before). Paging: limit, cursor. Sorting: sort=field or sort=-field.
+    public static ReservationQuery fromParams(Map<String, String> params, String forcedOwner) {
+        String owner = forcedOwner != null ? forcedOwner : blankToNull(params.get("ownerUsername"));
+        String roomType = blankToNull(params.get("roomType"));
+        if (roomType != null) roomType = roomType.toUpperCase();
+        String prefix = blankToNull(params.get("guestName"));
+
+        LocalDate from;
+        LocalDate to;
+        try {
+            String f = blankToNull(params.get("from"));
+            String t = blankToNull(params.get("to"));
+            from = f == null ? null : LocalDate.parse(f);
+            to = t == null ? null : LocalDate.parse(t);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Dates must be in yyyy-MM-dd format");
+        }
+
+        String sortStr = blankToNull(params.get("sort"));
+        boolean descending = false;
+        SortField sort = SortField.RESERVATION_NUMBER;
+        if (sortStr != null) {
+            if (sortStr.startsWith("-")) {
+                descending = true;
+                sortStr = sortStr.substring(1);
+            }
+            sort = SortField.fromParam(sortStr);
+        }
+
+        int limit = 0;
+        String limitStr = blankToNull(params.get("limit"));
+        if (limitStr != null) {
+            try {
+                limit = Integer.parseInt(limitStr);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Limit must be a number");
+            }
+            if (limit < 1) throw new IllegalArgumentException("Limit must be at least 1");
+            limit = Math.min(limit, MAX_LIMIT);
+        }
+
+        Reservation after = null;
+        String cursor = blankToNull(params.get("cursor"));
+        if (cursor != null) after = decodeCursor(sort, cursor);
+
+        return new ReservationQuery(owner, roomType, prefix, from, to, sort, descending, limit, after);
+    }
+
+    public boolean matches(Reservation r) {
+        if (ownerUsername != null && !ownerUsername.equals(r.ownerUsername)) return false;
+        if (roomType != null && !roomType.equals(r.roomType)) return false;
+        if (guestNamePrefix != null && !r.guestName.regionMatches(true, 0, guestNamePrefix, 0, guestNamePrefix.length())) return false;
+        if (from != null && r.checkIn.isBefore(from)) return false;
+        if (to != null && r.checkOut.isAfter(to)) return false;
+        return true;
+    }
+
+    public String cursorFor(Reservation r) {
+        String raw = sort.keyOf(r) + "\n" + r.reservationNumber;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Reservation decodeCursor(SortField sort, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int nl = raw.lastIndexOf('\n');
+            if (nl < 0) throw new IllegalArgumentException("Invalid cursor");
+            return sort.probe(raw.substring(0, nl), raw.substring(nl + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static String blankToNull(String s) {
+        if (s == null) return null;
+        s = s.trim();
+        return s.isEmpty() ? null : s;
+    }
+}
@@ -1,107 +1,639 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ReservationStore {
+    private static final String TOMBSTONE_PREFIX = "-|";
+    private static final int STRIPES = 64;
+
+    private static final Metrics.Histogram LOCK_WAIT = Metrics.timer("resort_store_lock_wait_seconds", "Time mutations waited for their stripe and log locks.");
+    private static final Metrics.Histogram COMMIT_WAIT = Metrics.timer("resort_store_commit_wait_seconds", "Time a mutation waited for its record to be written and forced.");
+    private static final Metrics.Histogram WRITE_TIME = Metrics.timer("resort_store_write_seconds", "Time to encode and write one group-commit batch.");
+    private static final Metrics.Histogram FSYNC_TIME = Metrics.timer("resort_store_fsync_seconds", "Time to force one group-commit batch to disk.");
+    private static final Metrics.Histogram BATCH_RECORDS = Metrics.histogram("resort_store_commit_batch_records", "Records written per group-commit batch.",
+            new long[]{1, 2, 4, 8, 16, 32, 64, 128, 256, 512});
+    private static final Metrics.Histogram REPLAY_TIME = Metrics.timer("resort_store_replay_seconds", "Time to read and parse the reservation log at startup.");
+    private static final Metrics.Counter REPLAY_BYTES = Metrics.counter("resort_store_replay_bytes_total", "Log bytes read and parsed by replays.");
+    private static final Metrics.Histogram COMPACTION_TIME = Metrics.timer("resort_store_compaction_seconds", "Duration of log compactions.");
+
     private final Path filePath;
+    private final RoomInventory inventory;
+    private final ReservationFormat format;
+    private final Map<String, Reservation> index = new ConcurrentHashMap<>();
+    private final ReservationIndex sorted = new ReservationIndex();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    // Mutations hold the read side while appending; compaction takes the write side to swap files.
+    private final ReentrantReadWriteLock logLock = new ReentrantReadWriteLock();
+    private final AtomicLong logRecords = new AtomicLong();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // Encoding and writing happen together so per-file encoder state matches the order on disk.
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private ReservationFormat.Encoder encoder;
+    private volatile boolean loaded;
+    private volatile CompactionStats lastCompaction;
+    private FileChannel log;
+    private final java.util.List<Listener> listeners = new java.util.concurrent.CopyOnWriteArrayList<>();
+    private final java.util.concurrent.BlockingQueue<PendingWrite> commitQueue = new java.util.concurrent.LinkedBlockingQueue<>();
+    private int commitMaxBatch = 256;
+    private long commitMaxLatencyNanos;
+    private Durability durability = Durability.BATCH;
+    private Thread committer;
+    // Set when a failed batch could not be cut back off the log; no record may follow it.
+    private volatile IOException failure;
+    // Wraps the append channel; the fault-injection harness (bench/StoreFaults) uses it to fail
+    // writes and forces. Set before first use.
+    java.util.function.UnaryOperator<FileChannel> logChannels = c -> c;
+
+    private static final class PendingWrite {
+        final java.util.function.Function<ReservationFormat.Encoder, byte[]> record;
+        final int records;
+        final java.util.concurrent.CompletableFuture<Void> done = new java.util.concurrent.CompletableFuture<>();
+
+        PendingWrite(java.util.function.Function<ReservationFormat.Encoder, byte[]> record, int records) {
+            this.record = record;
+            this.records = records;
+        }
+    }
+
+    // Told about every committed change while the reservation's stripe lock is held, so calls for
+    // one reservation arrive in order; calls for different reservations may run concurrently.
+    public interface Listener {
+        void added(Reservation r);
+
+        void updated(Reservation old, Reservation r);
+
+        void removed(Reservation old);
+
+        void reloaded(java.util.Collection<Reservation> all);
+    }
+
+    public static final class CompactionStats {
+        public final long recordsBefore;
+        public final long recordsAfter;
+        public final long bytesBefore;
+        public final long bytesAfter;
+        public final long durationMillis;
+        public final long finishedAtMillis;
+
+        public CompactionStats(long recordsBefore, long recordsAfter, long bytesBefore, long bytesAfter, long durationMillis, long finishedAtMillis) {
+            this.recordsBefore = recordsBefore;
+            this.recordsAfter = recordsAfter;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+            this.durationMillis = durationMillis;
+            this.finishedAtMillis = finishedAtMillis;
+        }
+
+        public long bytesReclaimed() {
+            return Math.max(0, bytesBefore - bytesAfter);
+        }
+    }
 
     public ReservationStore(Path filePath) {
+        this(filePath, null);
+    }
+
+    public ReservationStore(Path filePath, RoomInventory inventory) {
+        this(filePath, inventory, new TextReservationFormat());
+    }
+
+    public ReservationStore(Path filePath, RoomInventory inventory, ReservationFormat format) {
         this.filePath = filePath;
+        this.inventory = inventory;
+        this.format = format;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
     }
 
-    public synchronized void ensureExists() throws IOException {
-        if (Files.exists(filePath)) return;
-        if (filePath.getParent() != null) Files.createDirectories(filePath.getParent());
-        Files.createFile(filePath);
+    // Call before the store is first used. maxBatch caps the records written per force(); a
+    // maxLatencyMicros above zero lets the committer wait that long to fill a batch.
+    public void groupCommit(int maxBatch, long maxLatencyMicros) {
+        if (maxBatch < 1) throw new IllegalArgumentException("Group commit batch size must be at least 1");
+        commitMaxBatch = maxBatch;
+        commitMaxLatencyNanos = Math.max(0, maxLatencyMicros) * 1000L;
     }
 
-    public synchronized void add(Reservation r) throws IOException {
-        ensureExists();
-        Map<String, Reservation> all = loadAll();
-        if (all.containsKey(r.reservationNumber)) {
-            throw new IllegalArgumentException("Reservation number already exists: " + r.reservationNumber);
+    public void durability(Durability durability) {
+        this.durability = durability;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        if (loaded) listener.reloaded(java.util.Collections.unmodifiableCollection(index.values()));
+    }
+
+    public void ensureExists() throws IOException {
+        if (loaded) return;
+        logLock.writeLock().lock();
+        try {
+            if (loaded) return;
+            if (!Files.exists(filePath)) {
+                if (filePath.getParent() != null) Files.createDirectories(filePath.getParent());
+                Files.createFile(filePath);
+            }
+            replay();
+            log = logChannels.apply(FileChannel.open(filePath, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            if (log.size() == 0) {
+                ByteBuffer preamble = ByteBuffer.wrap(encoder.preamble());
+                while (preamble.hasRemaining()) log.write(preamble);
+                durability.force(log);
+            }
+            committer = new Thread(this::commitLoop, "reservation-committer");
+            committer.setDaemon(true);
+            committer.start();
+            loaded = true;
+        } finally {
+            logLock.writeLock().unlock();
         }
+    }
 
-        try (BufferedWriter w = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8, java.nio.file.StandardOpenOption.APPEND)) {
-            w.write(serialize(r));
-            w.newLine();
+    public void add(Reservation r) throws IOException {
+        ensureExists();
+        ResortEvents.StoreWrite event = new ResortEvents.StoreWrite("add", r.reservationNumber, 1);
+        event.begin();
+        ReentrantLock stripe = stripeFor(r.reservationNumber);
+        event.lockWait = lockForMutation(stripe);
+        try {
+            if (index.containsKey(r.reservationNumber)) {
+                throw new IllegalArgumentException("Reservation number already exists: " + r.reservationNumber);
+            }
+            if (inventory != null) inventory.reserve(r);
+            try {
+                append(e -> e.upsert(r), 1);
+            } catch (IOException e) {
+                if (inventory != null) inventory.release(r);
+                throw e;
+            }
+            index.put(r.reservationNumber, r);
+            sorted.add(r);
+            for (Listener l : listeners) l.added(r);
+        } finally {
+            logLock.readLock().unlock();
+            stripe.unlock();
+            event.commit();
         }
     }
 
-    public synchronized Reservation find(String reservationNumber) throws IOException {
+    // Adds a batch with a single log write. Rows that clash with an existing or earlier reservation
+    // number, or find no room, are skipped; their error is returned at the row's position and null
+    // marks a stored row.
+    public java.util.List<String> addAll(java.util.List<Reservation> batch) throws IOException {
         ensureExists();
-        try (BufferedReader r = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = r.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                Reservation rr = deserialize(line);
-                if (rr != null && rr.reservationNumber.equals(reservationNumber)) return rr;
+        String[] errors = new String[batch.size()];
+        boolean[] held = new boolean[STRIPES];
+        for (Reservation r : batch) held[stripeIndex(r.reservationNumber)] = true;
+        // Always in index order, so two batches cannot deadlock; single mutations hold one stripe.
+        ResortEvents.StoreWrite event = new ResortEvents.StoreWrite("addAll", null, 0);
+        event.begin();
+        long waitStarted = System.nanoTime();
+        for (int i = 0; i < STRIPES; i++) if (held[i]) stripes[i].lock();
+        logLock.readLock().lock();
+        event.lockWait = System.nanoTime() - waitStarted;
+        LOCK_WAIT.observe(event.lockWait);
+        try {
+            java.util.List<Reservation> accepted = new java.util.ArrayList<>();
+            java.util.Set<String> seen = new java.util.HashSet<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Reservation r = batch.get(i);
+                if (index.containsKey(r.reservationNumber) || !seen.add(r.reservationNumber)) {
+                    errors[i] = "Reservation number already exists: " + r.reservationNumber;
+                    continue;
+                }
+                try {
+                    if (inventory != null) inventory.reserve(r);
+                } catch (IllegalArgumentException e) {
+                    errors[i] = e.getMessage();
+                    continue;
+                }
+                accepted.add(r);
             }
+            if (accepted.isEmpty()) return java.util.Arrays.asList(errors);
+            try {
+                append(e -> {
+                    java.io.ByteArrayOutputStream records = new java.io.ByteArrayOutputStream();
+                    for (Reservation r : accepted) records.writeBytes(e.upsert(r));
+                    return records.toByteArray();
+                }, accepted.size());
+            } catch (IOException e) {
+                if (inventory != null) for (Reservation r : accepted) inventory.release(r);
+                throw e;
+            }
+            for (Reservation r : accepted) {
+                index.put(r.reservationNumber, r);
+                sorted.add(r);
+                for (Listener l : listeners) l.added(r);
+            }
+            event.records = accepted.size();
+        } finally {
+            logLock.readLock().unlock();
+            for (int i = STRIPES - 1; i >= 0; i--) if (held[i]) stripes[i].unlock();
+            event.commit();
         }
-        return null;
+        return java.util.Arrays.asList(errors);
+    }
+
+    public Reservation find(String reservationNumber) throws IOException {
+        ensureExists();
+        ResortEvents.StoreRead event = new ResortEvents.StoreRead("find", reservationNumber);
+        event.begin();
+        Reservation r = index.get(reservationNumber);
+        event.rows = r == null ? 0 : 1;
+        event.commit();
+        return r;
+    }
+
+    public java.util.List<Reservation> listAll() throws IOException {
+        ensureExists();
+        ResortEvents.StoreRead event = new ResortEvents.StoreRead("listAll", null);
+        event.begin();
+        java.util.List<Reservation> all = new java.util.ArrayList<>(sorted.ordered());
+        event.rows = all.size();
+        event.commit();
+        return all;
     }
 
-    public synchronized java.util.List<Reservation> listAll() throws IOException {
+    public java.util.Iterator<Reservation> query(ReservationQuery q) throws IOException {
         ensureExists();
-        java.util.List<Reservation> list = new java.util.ArrayList<>();
-        try (BufferedReader r = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = r.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                Reservation rr = deserialize(line);
-                if (rr != null) list.add(rr);
+        return sorted.scan(q);
+    }
+
+    public void update(Reservation r) throws IOException {
+        ensureExists();
+        ResortEvents.StoreWrite event = new ResortEvents.StoreWrite("update", r.reservationNumber, 1);
+        event.begin();
+        ReentrantLock stripe = stripeFor(r.reservationNumber);
+        event.lockWait = lockForMutation(stripe);
+        try {
+            Reservation old = index.get(r.reservationNumber);
+            if (old == null) {
+                throw new IllegalArgumentException("Reservation not found");
+            }
+            if (inventory != null) inventory.rebook(old, r);
+            try {
+                append(e -> e.upsert(r), 1);
+            } catch (IOException e) {
+                if (inventory != null) inventory.rebook(r, old);
+                throw e;
             }
+            index.put(r.reservationNumber, r);
+            sorted.remove(old);
+            sorted.add(r);
+            for (Listener l : listeners) l.updated(old, r);
+        } finally {
+            logLock.readLock().unlock();
+            stripe.unlock();
+            event.commit();
         }
-        return list;
     }
 
-    public synchronized void update(Reservation r) throws IOException {
+    public void delete(String reservationNumber) throws IOException {
         ensureExists();
-        Map<String, Reservation> all = loadAll();
-        if (!all.containsKey(r.reservationNumber)) {
-            throw new IllegalArgumentException("Reservation not found");
+        ResortEvents.StoreWrite event = new ResortEvents.StoreWrite("delete", reservationNumber, 1);
+        event.begin();
+        ReentrantLock stripe = stripeFor(reservationNumber);
+        event.lockWait = lockForMutation(stripe);
+        try {
+            Reservation old = index.get(reservationNumber);
+            if (old == null) {
+                throw new IllegalArgumentException("Reservation not found");
+            }
+            append(e -> e.tombstone(reservationNumber), 1);
+            index.remove(reservationNumber);
+            sorted.remove(old);
+            if (inventory != null) inventory.release(old);
+            for (Listener l : listeners) l.removed(old);
+        } finally {
+            logLock.readLock().unlock();
+            stripe.unlock();
+            event.commit();
         }
-        all.put(r.reservationNumber, r);
-        writeAll(all);
     }
 
-    public synchronized void delete(String reservationNumber) throws IOException {
+    public long logRecords() {
+        return logRecords.get();
+    }
+
+    public long liveRecords() {
+        return index.size();
+    }
+
+    public CompactionStats lastCompaction() {
+        return lastCompaction;
+    }
+
+    public ReservationFormat format() {
+        return format;
+    }
+
+    // Rewrites the log as one record per live reservation. The snapshot is written to a temp
+    // file without blocking the store; records appended meanwhile are copied over before the swap.
+    public CompactionStats compact() throws IOException {
         ensureExists();
-        Map<String, Reservation> all = loadAll();
-        if (all.remove(reservationNumber) == null) {
-            throw new IllegalArgumentException("Reservation not found");
+        if (!compacting.compareAndSet(false, true)) return null;
+        long started = System.nanoTime();
+        Path tmp = filePath.resolveSibling(filePath.getFileName() + ".compact");
+        try {
+            java.util.List<Reservation> snapshot;
+            long snapshotOffset;
+            long snapshotRecords;
+            ReservationFormat.Encoder snapshotEncoder;
+            logLock.writeLock().lock();
+            try {
+                snapshot = new java.util.ArrayList<>(index.values());
+                snapshotOffset = log.size();
+                snapshotRecords = logRecords.get();
+                // Records appended after this point may refer to the current file's encoder state,
+                // so the compacted file starts from a copy of that state.
+                snapshotEncoder = encoder.copy();
+            } finally {
+                logLock.writeLock().unlock();
+            }
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                out.write(snapshotEncoder.preamble());
+                for (Reservation r : snapshot) out.write(snapshotEncoder.upsert(r));
+            }
+
+            logLock.writeLock().lock();
+            try {
+                long bytesBefore = log.size();
+                try (FileChannel src = FileChannel.open(filePath, StandardOpenOption.READ);
+                     FileChannel dst = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    long pos = snapshotOffset;
+                    while (pos < bytesBefore) {
+                        pos += src.transferTo(pos, bytesBefore - pos, dst);
+                    }
+                    dst.force(true);
+                }
+                long bytesAfter = Files.size(tmp);
+                log.close();
+                Files.move(tmp, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                // A rewrite replaces the whole book, so it is made durable whatever the mode.
+                Durability.ALWAYS.forceDirectory(filePath.toAbsolutePath().getParent());
+                log = logChannels.apply(FileChannel.open(filePath, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+
+                long recordsBefore = logRecords.get();
+                long recordsAfter = snapshot.size() + (recordsBefore - snapshotRecords);
+                logRecords.set(recordsAfter);
+                COMPACTION_TIME.observeSince(started);
+                long durationMillis = (System.nanoTime() - started) / 1_000_000L;
+                lastCompaction = new CompactionStats(recordsBefore, recordsAfter, bytesBefore, bytesAfter, durationMillis, System.currentTimeMillis());
+                return lastCompaction;
+            } finally {
+                logLock.writeLock().unlock();
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+            compacting.set(false);
+        }
+    }
+
+    // Returns how long the caller waited, in nanoseconds.
+    private long lockForMutation(ReentrantLock stripe) {
+        long waitStarted = System.nanoTime();
+        stripe.lock();
+        logLock.readLock().lock();
+        long waited = System.nanoTime() - waitStarted;
+        LOCK_WAIT.observe(waited);
+        return waited;
+    }
+
+    private ReentrantLock stripeFor(String reservationNumber) {
+        return stripes[stripeIndex(reservationNumber)];
+    }
+
+    private static int stripeIndex(String reservationNumber) {
+        return (reservationNumber.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    // Rewrites a reservation file in another format, e.g. text to binary. Tombstoned and
+    // superseded records are dropped; every live reservation is carried over field for field.
+    public static int migrate(Path source, ReservationFormat from, Path target, ReservationFormat to) throws IOException {
+        Map<String, Reservation> live = new java.util.LinkedHashMap<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source))) {
+            from.replay(in, new ReservationFormat.RecordVisitor() {
+                @Override
+                public void upsert(Reservation r) {
+                    live.put(r.reservationNumber, r);
+                }
+
+                @Override
+                public void tombstone(String reservationNumber) {
+                    live.remove(reservationNumber);
+                }
+            });
+        }
+
+        if (target.getParent() != null) Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(target.getFileName() + ".migrate");
+        try {
+            ReservationFormat.Encoder enc = to.newEncoder();
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream out = new BufferedOutputStream(java.nio.channels.Channels.newOutputStream(ch))) {
+                out.write(enc.preamble());
+                for (Reservation r : live.values()) out.write(enc.upsert(r));
+                out.flush();
+                ch.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Durability.ALWAYS.forceDirectory(target.toAbsolutePath().getParent());
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return live.size();
+    }
+
+    private void replay() throws IOException {
+        ResortEvents.StoreReplay event = new ResortEvents.StoreReplay();
+        event.begin();
+        long started = System.nanoTime();
+        index.clear();
+        long[] records = new long[1];
+        long[] validBytes = new long[1];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(filePath))) {
+            encoder = format.replay(in, new ReservationFormat.RecordVisitor() {
+                @Override
+                public void upsert(Reservation r) {
+                    records[0]++;
+                    index.put(r.reservationNumber, r);
+                }
+
+                @Override
+                public void tombstone(String reservationNumber) {
+                    records[0]++;
+                    index.remove(reservationNumber);
+                }
+
+                @Override
+                public void end(long valid) {
+                    validBytes[0] = valid;
+                }
+            });
+        }
+        REPLAY_TIME.observeSince(started);
+        REPLAY_BYTES.add(validBytes[0]);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = filePath.toString();
+            event.format = format.name();
+            event.records = records[0];
+            event.bytes = validBytes[0];
+            event.commit();
+        }
+        long size = Files.size(filePath);
+        if (validBytes[0] < size) discardTornTail(validBytes[0], size);
+        logRecords.set(records[0]);
+        sorted.clear();
+        if (inventory != null) inventory.clearBookings();
+        for (Reservation r : index.values()) {
+            sorted.add(r);
+            if (inventory != null) inventory.restore(r);
+        }
+        for (Listener l : listeners) l.reloaded(java.util.Collections.unmodifiableCollection(index.values()));
+    }
+
+    // A crash mid-append leaves a partial record at the end of the log. It is copied aside for
+    // inspection and cut off, so that new records do not land after the garbage.
+    private void discardTornTail(long validBytes, long size) throws IOException {
+        Path aside = filePath.resolveSibling(filePath.getFileName() + ".torn-" + System.currentTimeMillis());
+        try (FileChannel ch = FileChannel.open(filePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel out = FileChannel.open(aside, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long pos = validBytes;
+            while (pos < size) pos += ch.transferTo(pos, size - pos, out);
+            out.force(true);
+            ch.truncate(validBytes);
+            ch.force(true);
+        }
+        System.err.println("Discarded " + (size - validBytes) + " bytes of incomplete records at the end of "
+                + filePath.getFileName() + " (saved to " + aside.getFileName() + ")");
+    }
+
+    // Hands the record to the committer thread and waits until it is on disk. Callers hold the read
+    // side of logLock until they have also updated the index, so compaction cannot snapshot the
+    // index between the two.
+    private void append(java.util.function.Function<ReservationFormat.Encoder, byte[]> record, int records) throws IOException {
+        PendingWrite write = new PendingWrite(record, records);
+        long started = System.nanoTime();
+        commitQueue.add(write);
+        try {
+            write.done.join();
+            COMMIT_WAIT.observeSince(started);
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
         }
-        writeAll(all);
     }
 
-    private Map<String, Reservation> loadAll() throws IOException {
-        Map<String, Reservation> map = new HashMap<>();
-        try (BufferedReader r = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = r.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                Reservation rr = deserialize(line);
-                if (rr != null) map.put(rr.reservationNumber, rr);
+    // Group commit: everything queued while the previous force() ran goes out as one write and one
+    // force(). With a latency budget the committer also waits up to that long for a fuller batch.
+    // ALWAYS durability commits one write at a time; NONE writes batches but never forces.
+    private void commitLoop() {
+        java.util.List<PendingWrite> batch = new java.util.ArrayList<>();
+        while (true) {
+            try {
+                batch.add(commitQueue.take());
+                int maxBatch = durability == Durability.ALWAYS ? 1 : commitMaxBatch;
+                if (commitMaxLatencyNanos > 0 && durability == Durability.BATCH) {
+                    long deadline = System.nanoTime() + commitMaxLatencyNanos;
+                    while (batch.size() < maxBatch) {
+                        PendingWrite next = commitQueue.poll(deadline - System.nanoTime(), java.util.concurrent.TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                } else {
+                    commitQueue.drainTo(batch, maxBatch - 1);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
             }
         }
-        return map;
     }
 
-    private void writeAll(Map<String, Reservation> all) throws IOException {
-        try (BufferedWriter w = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
-            for (Reservation r : all.values()) {
-                w.write(serialize(r));
-                w.newLine();
+    private void commit(java.util.List<PendingWrite> batch) {
+        appendLock.lock();
+        try {
+            encoder.mark();
+            int records = 0;
+            ResortEvents.StoreCommit event = new ResortEvents.StoreCommit();
+            event.begin();
+            long start = -1;
+            try {
+                if (failure != null) throw new IOException("Reservation log is read-only after a failed write", failure);
+                start = log.size();
+                long started = System.nanoTime();
+                java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+                for (PendingWrite w : batch) {
+                    bytes.writeBytes(w.record.apply(encoder));
+                    records += w.records;
+                }
+                ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                while (buf.hasRemaining()) log.write(buf);
+                long written = System.nanoTime();
+                WRITE_TIME.observe(written - started);
+                durability.force(log);
+                long forced = System.nanoTime();
+                FSYNC_TIME.observe(forced - written);
+                BATCH_RECORDS.observe(records);
+                event.records = records;
+                event.bytes = buf.capacity();
+                event.forceTime = forced - written;
+            } catch (IOException | RuntimeException e) {
+                encoder.abort();
+                if (start >= 0) rollback(start, e);
+                for (PendingWrite w : batch) w.done.completeExceptionally(e);
+                return;
             }
+            logRecords.addAndGet(records);
+            event.commit();
+            for (PendingWrite w : batch) w.done.complete(null);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Callers of a failed batch undo their index and inventory changes, so its bytes must not stay
+    // in the log for the next replay to bring back. If the log cannot be cut back to where the
+    // batch started, every later write is refused rather than appended after the leftovers.
+    private void rollback(long start, Exception cause) {
+        try {
+            if (log.size() > start) log.truncate(start);
+            log.force(true);
+        } catch (IOException | RuntimeException e) {
+            cause.addSuppressed(e);
+            failure = new IOException("Could not remove a failed write from " + filePath.getFileName(), e);
+            System.err.println(failure.getMessage() + "; refusing further writes until restart: " + e);
         }
     }
 
+    static String tombstone(String reservationNumber) {
+        return TOMBSTONE_PREFIX + esc(reservationNumber);
+    }
+
+    static boolean isTombstone(String line) {
+        return line.startsWith(TOMBSTONE_PREFIX) && splitEscaped(line).length == 2;
+    }
+
+    static String tombstoneNumber(String line) {
+        return unesc(line.substring(TOMBSTONE_PREFIX.length()));
+    }
+
     private static String esc(String s) {
         if (s == null) return "";
         return s.replace("\\", "\\\\").replace("|", "\\|").replace("\n", "\\n");
@@ -0,0 +1,193 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+// Flight Recorder events for the store, auth and HTTP paths. They cost next to nothing unless a
+// recording is running: start the server with --jfr (or -Dresort.jfr=true) to keep a continuous
+// in-memory/disk ring buffer, and fetch it as a .jfr file from GET /api/diagnostics/jfr.
+public class ResortEvents {
+    private static volatile Recording continuous;
+
+    @Name("resort.StoreRead")
+    @Label("Store Read")
+    @Category({"Ocean Resort", "Store"})
+    @StackTrace(false)
+    public static final class StoreRead extends Event {
+        @Label("Operation")
+        public String operation;
+        @Label("Reservation Number")
+        public String reservationNumber;
+        @Label("Rows")
+        public int rows;
+
+        public StoreRead(String operation, String reservationNumber) {
+            this.operation = operation;
+            this.reservationNumber = reservationNumber;
+        }
+    }
+
+    @Name("resort.StoreWrite")
+    @Label("Store Write")
+    @Category({"Ocean Resort", "Store"})
+    @StackTrace(false)
+    public static final class StoreWrite extends Event {
+        @Label("Operation")
+        public String operation;
+        @Label("Reservation Number")
+        public String reservationNumber;
+        @Label("Records")
+        public int records;
+        @Label("Lock Wait")
+        @Timespan
+        public long lockWait;
+
+        public StoreWrite(String operation, String reservationNumber, int records) {
+            this.operation = operation;
+            this.reservationNumber = reservationNumber;
+            this.records = records;
+        }
+    }
+
+    // One group-commit batch: a single write and force for every record queued together.
+    @Name("resort.StoreCommit")
+    @Label("Store Commit")
+    @Category({"Ocean Resort", "Store"})
+    @StackTrace(false)
+    public static final class StoreCommit extends Event {
+        @Label("Records")
+        public int records;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Force Time")
+        @Timespan
+        public long forceTime;
+    }
+
+    @Name("resort.StoreReplay")
+    @Label("Store Replay")
+    @Category({"Ocean Resort", "Store"})
+    @StackTrace(false)
+    public static final class StoreReplay extends Event {
+        @Label("File")
+        public String file;
+        @Label("Format")
+        public String format;
+        @Label("Records")
+        public long records;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("resort.Login")
+    @Label("Login")
+    @Category({"Ocean Resort", "Auth"})
+    @StackTrace(false)
+    public static final class Login extends Event {
+        @Label("Username")
+        public String username;
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("resort.SessionCheck")
+    @Label("Session Check")
+    @Category({"Ocean Resort", "Auth"})
+    @StackTrace(false)
+    public static final class SessionCheck extends Event {
+        @Label("Username")
+        public String username;
+        @Label("Valid")
+        public boolean valid;
+    }
+
+    @Name("resort.HttpExchange")
+    @Label("HTTP Exchange")
+    @Category({"Ocean Resort", "HTTP"})
+    @StackTrace(false)
+    public static final class HttpExchangeEvent extends Event {
+        @Label("Method")
+        public String method;
+        @Label("Route")
+        public String route;
+        @Label("Path")
+        public String path;
+        @Label("Status")
+        public int status;
+        @Label("Response Bytes")
+        @DataAmount
+        public long responseBytes;
+    }
+
+    public static Filter httpFilter(String route) {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+                HttpExchangeEvent event = new HttpExchangeEvent();
+                event.begin();
+                try {
+                    chain.doFilter(ex);
+                } finally {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.method = ex.getRequestMethod();
+                        event.route = route;
+                        event.path = ex.getRequestURI().getPath();
+                        event.status = ex.getResponseCode();
+                        String length = ex.getResponseHeaders().getFirst("Content-length");
+                        event.responseBytes = length == null ? -1 : Long.parseLong(length);
+                        event.commit();
+                    }
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Emits a resort.HttpExchange flight recorder event for " + route;
+            }
+        };
+    }
+
+    // Starts a recording with the JDK's default (low overhead) settings plus the events above,
+    // keeping at most maxAge and maxBytes of history.
+    public static synchronized void startContinuous(Duration maxAge, long maxBytes) throws IOException {
+        if (continuous != null) return;
+        Recording r;
+        try {
+            r = new Recording(Configuration.getConfiguration("default"));
+        } catch (ParseException e) {
+            throw new IOException("Cannot read the default flight recorder settings", e);
+        }
+        r.setName("ocean-resort");
+        r.setToDisk(true);
+        r.setMaxAge(maxAge);
+        r.setMaxSize(maxBytes);
+        r.start();
+        continuous = r;
+    }
+
+    public static boolean recording() {
+        return continuous != null;
+    }
+
+    // Writes what the ring buffer currently holds to target.
+    public static void dump(Path target) throws IOException {
+        Recording r = continuous;
+        if (r == null) throw new IllegalStateException("Flight recording is not enabled");
+        r.dump(target);
+    }
+}
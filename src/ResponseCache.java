@@ -0,0 +1,143 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serialised JSON for single-reservation reads (GET /api/reservations/{id}, /api/bill/{id}), one
+// map per kind and role view keyed by reservation number. Store changes drop the reservation's
+// entries; an entry is also only served while it was built from the very Reservation object (and
+// rate table) the caller just looked up, so a render racing an update is never reused.
+//
+// Hits take no lock: they only set the entry's referenced bit. Eviction is an approximate LRU (the
+// clock algorithm) over a queue of entries in insertion order and is the only step that locks.
+public class ResponseCache implements ReservationStore.Listener {
+    public static final String RESERVATION_ADMIN = "reservation/admin";
+    public static final String RESERVATION_GUEST = "reservation/guest";
+    public static final String BILL = "bill";
+    private static final String[] VIEWS = {RESERVATION_ADMIN, RESERVATION_GUEST, BILL};
+
+    private static final Metrics.Counter HITS = Metrics.counter("resort_response_cache_requests_total",
+            "Cached single-reservation responses looked up, by result.", "result=\"hit\"");
+    private static final Metrics.Counter MISSES = Metrics.counter("resort_response_cache_requests_total",
+            "Cached single-reservation responses looked up, by result.", "result=\"miss\"");
+
+    public static final class Entry {
+        public final byte[] json;
+        public final String etag;
+        final Reservation source;
+        final Object dependsOn;
+        final Map<String, Entry> view;
+        final String reservationNumber;
+        // Set on every hit, cleared when the clock hand passes: entries hit since survive a round.
+        volatile boolean referenced;
+
+        Entry(Map<String, Entry> view, Reservation source, Object dependsOn, byte[] json) {
+            this.view = view;
+            this.reservationNumber = source.reservationNumber;
+            this.source = source;
+            this.dependsOn = dependsOn;
+            this.json = json;
+            this.etag = RateTable.etagFor(json);
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<String, Map<String, Entry>> views = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    // The clock: every entry put, oldest first. Entries since replaced or dropped stay in it until
+    // the hand reaches them, so it is also swept when it grows past twice the cache size.
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Object evicting = new Object();
+
+    public ResponseCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("Response cache size must be at least 1");
+        this.maxEntries = maxEntries;
+        for (String view : VIEWS) views.put(view, new ConcurrentHashMap<>());
+    }
+
+    // Returns the cached body for r in the given view, rendering it on a miss. dependsOn is any
+    // other input compared by identity, e.g. the rate table a bill was priced with.
+    public Entry get(String view, Reservation r, Object dependsOn, HttpUtil.JsonBody render) throws IOException {
+        Map<String, Entry> entries = views.get(view);
+        if (entries == null) throw new IllegalArgumentException("Unknown response view: " + view);
+        Entry e = entries.get(r.reservationNumber);
+        if (e != null && e.source == r && e.dependsOn == dependsOn) {
+            if (!e.referenced) e.referenced = true;
+            HITS.increment();
+            return e;
+        }
+        MISSES.increment();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (JsonWriter w = new JsonWriter(bytes)) {
+            render.write(w);
+        }
+        e = new Entry(entries, r, dependsOn, bytes.toByteArray());
+        if (entries.put(r.reservationNumber, e) == null) size.incrementAndGet();
+        clock.add(e);
+        queued.incrementAndGet();
+        if (size.get() > maxEntries || queued.get() > 2 * maxEntries) evict();
+        return e;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public void invalidate(String reservationNumber) {
+        for (Map<String, Entry> entries : views.values()) {
+            if (entries.remove(reservationNumber) != null) size.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void added(Reservation r) {
+        invalidate(r.reservationNumber);
+    }
+
+    @Override
+    public void updated(Reservation old, Reservation r) {
+        invalidate(r.reservationNumber);
+    }
+
+    @Override
+    public void removed(Reservation old) {
+        invalidate(old.reservationNumber);
+    }
+
+    @Override
+    public void reloaded(Collection<Reservation> all) {
+        for (Map<String, Entry> entries : views.values()) {
+            for (String reservationNumber : entries.keySet()) {
+                if (entries.remove(reservationNumber) != null) size.decrementAndGet();
+            }
+        }
+    }
+
+    // Moves the hand until the cache is back under its size: entries no longer in their map are
+    // dropped from the clock, referenced ones are cleared and go round again, and the first
+    // unreferenced one is evicted. Bounded to two turns of the clock.
+    private void evict() {
+        synchronized (evicting) {
+            int steps = 2 * queued.get();
+            while ((size.get() > maxEntries || queued.get() > 2 * maxEntries) && steps-- > 0) {
+                Entry e = clock.poll();
+                if (e == null) return;
+                queued.decrementAndGet();
+                if (e.view.get(e.reservationNumber) != e) continue;
+                if (size.get() > maxEntries && !e.referenced) {
+                    if (e.view.remove(e.reservationNumber, e)) size.decrementAndGet();
+                    continue;
+                }
+                // Only sweeping out dropped entries: leave the live ones' bits alone.
+                if (size.get() > maxEntries) e.referenced = false;
+                clock.add(e);
+                queued.incrementAndGet();
+            }
+        }
+    }
+}
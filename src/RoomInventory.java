@@ -0,0 +1,269 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Rooms per type plus a per-night occupancy count for each type, kept in a segment tree so
+// "how full is the fullest night between X and Y" is a single O(log n) query.
+public class RoomInventory {
+    private static final long BASE_EPOCH_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final int SPAN_DAYS = 1 << 16;
+
+    private final Path roomsFile;
+    private final Map<String, RoomType> types = new LinkedHashMap<>();
+
+    private static final class RoomType {
+        final String name;
+        final int rooms;
+        final OccupancyTree nights = new OccupancyTree(SPAN_DAYS);
+        final ReentrantLock lock = new ReentrantLock();
+
+        RoomType(String name, int rooms) {
+            this.name = name;
+            this.rooms = rooms;
+        }
+    }
+
+    public RoomInventory(Path roomsFile) {
+        this.roomsFile = roomsFile;
+    }
+
+    public static Map<String, Integer> defaultRooms() {
+        Map<String, Integer> rooms = new LinkedHashMap<>();
+        rooms.put("STANDARD", 20);
+        rooms.put("DELUXE", 10);
+        rooms.put("SUITE", 5);
+        return rooms;
+    }
+
+    // rooms.txt holds one "ROOM_TYPE|count" line per type and is created with defaults if missing.
+    public synchronized void load() throws IOException {
+        if (!Files.exists(roomsFile)) {
+            if (roomsFile.getParent() != null) Files.createDirectories(roomsFile.getParent());
+            try (BufferedWriter w = Files.newBufferedWriter(roomsFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Integer> e : defaultRooms().entrySet()) {
+                    w.write(e.getKey() + "|" + e.getValue());
+                    w.newLine();
+                }
+            }
+        }
+
+        types.clear();
+        try (BufferedReader r = Files.newBufferedReader(roomsFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\|");
+                if (parts.length < 2) continue;
+                try {
+                    String name = parts[0].trim().toUpperCase();
+                    types.put(name, new RoomType(name, Integer.parseInt(parts[1].trim())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+    }
+
+    public java.util.Set<String> roomTypes() {
+        return java.util.Collections.unmodifiableSet(types.keySet());
+    }
+
+    public int rooms(String roomType) {
+        return type(roomType).rooms;
+    }
+
+    public int freeRooms(String roomType, LocalDate from, LocalDate to) {
+        RoomType t = type(roomType);
+        int lo = offset(from);
+        int hi = offset(to);
+        t.lock.lock();
+        try {
+            return Math.max(0, t.rooms - t.nights.max(lo, hi));
+        } finally {
+            t.lock.unlock();
+        }
+    }
+
+    public boolean isAvailable(String roomType, LocalDate from, LocalDate to) {
+        return freeRooms(roomType, from, to) > 0;
+    }
+
+    public int[] freeRoomsPerNight(String roomType, LocalDate from, LocalDate to) {
+        RoomType t = type(roomType);
+        int lo = offset(from);
+        int hi = offset(to);
+        int[] free = new int[Math.max(0, hi - lo)];
+        t.lock.lock();
+        try {
+            for (int i = 0; i < free.length; i++) {
+                free[i] = Math.max(0, t.rooms - t.nights.max(lo + i, lo + i + 1));
+            }
+        } finally {
+            t.lock.unlock();
+        }
+        return free;
+    }
+
+    public void reserve(Reservation r) {
+        RoomType t = type(r.roomType);
+        int lo = offset(r.checkIn);
+        int hi = offset(r.checkOut);
+        t.lock.lock();
+        try {
+            if (t.nights.max(lo, hi) >= t.rooms) {
+                throw new IllegalArgumentException("No " + t.name + " rooms available for the selected dates");
+            }
+            t.nights.add(lo, hi, 1);
+        } finally {
+            t.lock.unlock();
+        }
+    }
+
+    public void release(Reservation r) {
+        RoomType t = types.get(r.roomType);
+        if (t == null || !inRange(r)) return;
+        t.lock.lock();
+        try {
+            t.nights.add(offset(r.checkIn), offset(r.checkOut), -1);
+        } finally {
+            t.lock.unlock();
+        }
+    }
+
+    // Moves a booking to new dates or a new type; the old nights stay booked if the new ones are full.
+    // Only nights the booking does not already hold are checked, so edits to a reservation loaded
+    // over capacity by restore() still go through.
+    public void rebook(Reservation old, Reservation updated) {
+        RoomType a = types.get(old.roomType);
+        RoomType b = type(updated.roomType);
+        if (a == b && old.checkIn.equals(updated.checkIn) && old.checkOut.equals(updated.checkOut)) return;
+        RoomType first = a == null || a.name.compareTo(b.name) <= 0 ? a : b;
+        RoomType second = first == a ? b : a;
+        if (first != null) first.lock.lock();
+        if (second != null && second != first) second.lock.lock();
+        try {
+            boolean held = a != null && inRange(old);
+            if (held) a.nights.add(offset(old.checkIn), offset(old.checkOut), -1);
+            int lo = offset(updated.checkIn);
+            int hi = offset(updated.checkOut);
+            boolean full;
+            if (held && a == b) {
+                int oldLo = offset(old.checkIn);
+                int oldHi = offset(old.checkOut);
+                full = full(b, lo, Math.min(hi, oldLo)) || full(b, Math.max(lo, oldHi), hi);
+            } else {
+                full = full(b, lo, hi);
+            }
+            if (full) {
+                if (held) a.nights.add(offset(old.checkIn), offset(old.checkOut), 1);
+                throw new IllegalArgumentException("No " + b.name + " rooms available for the selected dates");
+            }
+            b.nights.add(lo, hi, 1);
+        } finally {
+            if (second != null && second != first) second.lock.unlock();
+            if (first != null) first.lock.unlock();
+        }
+    }
+
+    private static boolean full(RoomType t, int lo, int hi) {
+        return lo < hi && t.nights.max(lo, hi) >= t.rooms;
+    }
+
+    // Counts an existing booking without checking capacity, so history that predates a
+    // smaller room count still loads.
+    public void restore(Reservation r) {
+        RoomType t = types.get(r.roomType);
+        if (t == null || !inRange(r)) return;
+        t.lock.lock();
+        try {
+            t.nights.add(offset(r.checkIn), offset(r.checkOut), 1);
+        } finally {
+            t.lock.unlock();
+        }
+    }
+
+    public void clearBookings() {
+        for (RoomType t : types.values()) {
+            t.lock.lock();
+            try {
+                t.nights.clear();
+            } finally {
+                t.lock.unlock();
+            }
+        }
+    }
+
+    private RoomType type(String roomType) {
+        RoomType t = types.get(roomType);
+        if (t == null) throw new IllegalArgumentException("Unknown room type: " + roomType);
+        return t;
+    }
+
+    private static boolean inRange(Reservation r) {
+        long lo = r.checkIn.toEpochDay() - BASE_EPOCH_DAY;
+        long hi = r.checkOut.toEpochDay() - BASE_EPOCH_DAY;
+        return lo >= 0 && hi <= SPAN_DAYS && lo < hi;
+    }
+
+    private static int offset(LocalDate d) {
+        long off = d.toEpochDay() - BASE_EPOCH_DAY;
+        if (off < 0 || off > SPAN_DAYS) throw new IllegalArgumentException("Dates are outside the bookable range");
+        return (int) off;
+    }
+
+    // Range add / range max over nights [l, r). Each node's max already includes its own pending add.
+    static final class OccupancyTree {
+        private final int n;
+        private final int[] max;
+        private final int[] pending;
+
+        OccupancyTree(int n) {
+            this.n = n;
+            this.max = new int[2 * n];
+            this.pending = new int[2 * n];
+        }
+
+        void add(int l, int r, int v) {
+            if (l < r) add(1, 0, n, l, r, v);
+        }
+
+        int max(int l, int r) {
+            if (l >= r) return 0;
+            return max(1, 0, n, l, r);
+        }
+
+        void clear() {
+            java.util.Arrays.fill(max, 0);
+            java.util.Arrays.fill(pending, 0);
+        }
+
+        private void add(int node, int nl, int nr, int l, int r, int v) {
+            if (r <= nl || nr <= l) return;
+            if (l <= nl && nr <= r) {
+                max[node] += v;
+                pending[node] += v;
+                return;
+            }
+            int mid = (nl + nr) >>> 1;
+            add(2 * node, nl, mid, l, r, v);
+            add(2 * node + 1, mid, nr, l, r, v);
+            max[node] = pending[node] + Math.max(max[2 * node], max[2 * node + 1]);
+        }
+
+        private int max(int node, int nl, int nr, int l, int r) {
+            if (l <= nl && nr <= r) return max[node];
+            int mid = (nl + nr) >>> 1;
+            int best = Integer.MIN_VALUE;
+            if (l < mid) best = Math.max(best, max(2 * node, nl, mid, l, r));
+            if (r > mid) best = Math.max(best, max(2 * node + 1, mid, nr, l, r));
+            return best + pending[node];
+        }
+    }
+}
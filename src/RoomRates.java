@@ -1,8 +1,88 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class RoomRates {
+    private static volatile RateTable current = build(defaultBaseRates(), new LinkedHashMap<>(), new LinkedHashMap<>());
+    private static Path ratesFile;
+    private static FileTime loadedAt;
+    private static ScheduledExecutorService watcher;
+
     public static Map<String, Integer> defaultRates() {
+        Map<String, Integer> rates = new LinkedHashMap<>();
+        for (RateTable.TypeRates t : current.types().values()) rates.put(t.roomType, t.baseRate);
+        return rates;
+    }
+
+    public static int rateForRoomType(String roomType) {
+        return current.type(roomType).baseRate;
+    }
+
+    public static int nightlyRate(String roomType, LocalDate night) {
+        return current.type(roomType).rateFor(night);
+    }
+
+    public static RateTable current() {
+        return current;
+    }
+
+    // rates.txt lines: BASE|TYPE|rate, WEEKEND|TYPE|rate (Friday and Saturday nights),
+    // SEASON|TYPE|from|to|rate (nights from..to inclusive). Created with the base rates if missing.
+    public static synchronized void load(Path file) throws IOException {
+        ratesFile = file;
+        if (!Files.exists(file)) {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Integer> e : defaultBaseRates().entrySet()) {
+                    w.write("BASE|" + e.getKey() + "|" + e.getValue());
+                    w.newLine();
+                }
+            }
+        }
+        loadedAt = Files.getLastModifiedTime(file);
+        current = parse(file);
+    }
+
+    public static synchronized void startWatching(long intervalSeconds) {
+        if (watcher != null) return;
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rates-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(RoomRates::reloadIfChanged, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Keeps serving the previous table if the edited file does not parse.
+    public static synchronized boolean reloadIfChanged() {
+        if (ratesFile == null) return false;
+        try {
+            FileTime modified = Files.getLastModifiedTime(ratesFile);
+            if (modified.equals(loadedAt)) return false;
+            loadedAt = modified;
+            current = parse(ratesFile);
+            System.out.println("Reloaded room rates from " + ratesFile.getFileName());
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not reload room rates: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Map<String, Integer> defaultBaseRates() {
         Map<String, Integer> rates = new LinkedHashMap<>();
         rates.put("STANDARD", 8000);
         rates.put("DELUXE", 12000);
@@ -10,11 +90,52 @@ public class RoomRates {
         return rates;
     }
 
-    public static int rateForRoomType(String roomType) {
-        Integer rate = defaultRates().get(roomType);
-        if (rate == null) {
-            throw new IllegalArgumentException("Unknown room type: " + roomType);
+    private static RateTable parse(Path file) throws IOException {
+        Map<String, Integer> base = new LinkedHashMap<>();
+        Map<String, Integer> weekend = new LinkedHashMap<>();
+        Map<String, List<RateTable.Season>> seasons = new LinkedHashMap<>();
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = r.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\|");
+                try {
+                    String kind = parts[0].trim().toUpperCase();
+                    String type = parts[1].trim().toUpperCase();
+                    if (kind.equals("BASE") && parts.length == 3) {
+                        base.put(type, Integer.parseInt(parts[2].trim()));
+                    } else if (kind.equals("WEEKEND") && parts.length == 3) {
+                        weekend.put(type, Integer.parseInt(parts[2].trim()));
+                    } else if (kind.equals("SEASON") && parts.length == 5) {
+                        LocalDate from = LocalDate.parse(parts[2].trim());
+                        LocalDate to = LocalDate.parse(parts[3].trim());
+                        if (to.isBefore(from)) throw new IllegalArgumentException("season ends before it starts");
+                        seasons.computeIfAbsent(type, k -> new ArrayList<>())
+                                .add(new RateTable.Season(from, to, Integer.parseInt(parts[4].trim())));
+                    } else {
+                        throw new IllegalArgumentException("unrecognised line");
+                    }
+                } catch (ArrayIndexOutOfBoundsException | DateTimeParseException e) {
+                    throw new IllegalArgumentException(file.getFileName() + " line " + lineNo + ": " + e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file.getFileName() + " line " + lineNo + ": " + e.getMessage());
+                }
+            }
+        }
+        if (base.isEmpty()) throw new IllegalArgumentException(file.getFileName() + " has no BASE rates");
+        return build(base, weekend, seasons);
+    }
+
+    private static RateTable build(Map<String, Integer> base, Map<String, Integer> weekend, Map<String, List<RateTable.Season>> seasons) {
+        Map<String, RateTable.TypeRates> types = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : base.entrySet()) {
+            String type = e.getKey();
+            types.put(type, new RateTable.TypeRates(type, e.getValue(), weekend.getOrDefault(type, 0),
+                    seasons.getOrDefault(type, new ArrayList<>())));
         }
-        return rate;
+        return new RateTable(types);
     }
 }
@@ -0,0 +1,167 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Sessions indexed by token and by username, expired by a hashed timer wheel.
+// A session is filed under the wheel slot of its deadline when created; touching it only
+// bumps lastAccess, and the sweeper re-files it if the slot comes round before it is due.
+public class SessionTable {
+    private static final long TICK_MILLIS = 1000L;
+
+    private final long idleTtlMillis;
+    private final long absoluteTtlMillis;
+    private final int maxSessions;
+    private final Map<String, AuthService.Session> byToken = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+    private final Set<String>[] wheel;
+    private final int mask;
+    // Last tick whose slot has been fully processed.
+    private volatile long sweptTick;
+    private ScheduledExecutorService sweeper;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionTable(long idleTtlMillis, long absoluteTtlMillis, int maxSessions) {
+        this.idleTtlMillis = idleTtlMillis;
+        this.absoluteTtlMillis = absoluteTtlMillis;
+        this.maxSessions = maxSessions;
+        int slots = Integer.highestOneBit((int) Math.min(1 << 20, idleTtlMillis / TICK_MILLIS + 2)) << 1;
+        this.wheel = new Set[slots];
+        for (int i = 0; i < slots; i++) wheel[i] = ConcurrentHashMap.newKeySet();
+        this.mask = slots - 1;
+        this.sweptTick = System.currentTimeMillis() / TICK_MILLIS;
+    }
+
+    public static SessionTable fromSystemProperties() {
+        long idleMinutes = Long.getLong("resort.session.idleMinutes", 30L);
+        long absoluteHours = Long.getLong("resort.session.absoluteHours", 12L);
+        int max = Integer.getInteger("resort.session.max", 10000);
+        return new SessionTable(TimeUnit.MINUTES.toMillis(idleMinutes), TimeUnit.HOURS.toMillis(absoluteHours), max);
+    }
+
+    public void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleAtFixedRate(() -> sweep(System.currentTimeMillis()), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stopSweeper() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    public void put(String token, AuthService.Session s) {
+        byToken.put(token, s);
+        tokensByUser.compute(s.username, (k, tokens) -> {
+            if (tokens == null) tokens = ConcurrentHashMap.newKeySet();
+            tokens.add(token);
+            return tokens;
+        });
+        schedule(token, s);
+        if (byToken.size() > maxSessions) evictNearestDeadline();
+    }
+
+    public AuthService.Session get(String token) {
+        AuthService.Session s = byToken.get(token);
+        if (s == null) return null;
+        long now = System.currentTimeMillis();
+        if (deadline(s) <= now) {
+            remove(token);
+            return null;
+        }
+        s.touch(now);
+        return s;
+    }
+
+    public void remove(String token) {
+        AuthService.Session s = byToken.remove(token);
+        if (s == null) return;
+        wheel[s.slot].remove(token);
+        tokensByUser.computeIfPresent(s.username, (k, tokens) -> {
+            tokens.remove(token);
+            return tokens.isEmpty() ? null : tokens;
+        });
+    }
+
+    public void revokeUser(String username) {
+        Set<String> tokens = tokensByUser.remove(username);
+        if (tokens == null) return;
+        for (String token : tokens) {
+            AuthService.Session s = byToken.remove(token);
+            if (s != null) wheel[s.slot].remove(token);
+        }
+    }
+
+    public int size() {
+        return byToken.size();
+    }
+
+    // Processes every tick since the last sweep; work is proportional to the sessions filed
+    // in those slots, which are either expired or get re-filed at their real deadline.
+    public synchronized int sweep(long now) {
+        long nowTick = now / TICK_MILLIS;
+        if (nowTick - sweptTick > wheel.length) sweptTick = nowTick - wheel.length;
+        int expired = 0;
+        while (sweptTick + 1 < nowTick) {
+            expired += drainSlot((int) ((sweptTick + 1) & mask), now, 0);
+            sweptTick++;
+        }
+        return expired;
+    }
+
+    // Over the cap, drops the sessions that would expire soonest, walking the wheel from now.
+    private synchronized void evictNearestDeadline() {
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= wheel.length && byToken.size() > maxSessions; i++) {
+            int slot = (int) ((sweptTick + i) & mask);
+            drainSlot(slot, now, byToken.size() - maxSessions);
+        }
+    }
+
+    // Drops sessions that are due, plus up to `evict` sessions whose deadline really falls in
+    // this slot; sessions touched since they were filed move to the slot of their new deadline.
+    private int drainSlot(int slot, long now, int evict) {
+        int removed = 0;
+        Iterator<String> it = wheel[slot].iterator();
+        while (it.hasNext()) {
+            String token = it.next();
+            AuthService.Session s = byToken.get(token);
+            if (s == null) {
+                it.remove();
+                continue;
+            }
+            long deadline = deadline(s);
+            boolean due = deadline <= now;
+            boolean evictable = removed < evict && slotOf(deadline) == slot;
+            if (due || evictable) {
+                remove(token);
+                removed++;
+            } else if (slotOf(deadline) != slot) {
+                it.remove();
+                schedule(token, s);
+            }
+        }
+        return removed;
+    }
+
+    private void schedule(String token, AuthService.Session s) {
+        int slot = slotOf(deadline(s));
+        s.slot = slot;
+        wheel[slot].add(token);
+    }
+
+    private int slotOf(long deadline) {
+        long tick = Math.min(deadline / TICK_MILLIS, sweptTick + wheel.length);
+        tick = Math.max(tick, sweptTick + 1);
+        return (int) (tick & mask);
+    }
+
+    private long deadline(AuthService.Session s) {
+        return Math.min(s.lastAccessMillis() + idleTtlMillis, s.createdAtMillis + absoluteTtlMillis);
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// The original pipe-delimited format: one reservation per line, "-|<number>" removes one.
+public class TextReservationFormat implements ReservationFormat {
+    private static final byte[] NONE = new byte[0];
+    private static final String NEWLINE = System.lineSeparator();
+
+    private static final class TextEncoder implements Encoder {
+        // The file ends in a complete record that lacks its newline (e.g. edited by hand), so the
+        // next record has to start with one.
+        private boolean unterminated;
+        private boolean markedUnterminated;
+
+        TextEncoder(boolean unterminated) {
+            this.unterminated = unterminated;
+            this.markedUnterminated = unterminated;
+        }
+
+        @Override
+        public byte[] preamble() {
+            return NONE;
+        }
+
+        @Override
+        public synchronized byte[] upsert(Reservation r) {
+            return line(ReservationStore.serialize(r));
+        }
+
+        @Override
+        public synchronized byte[] tombstone(String reservationNumber) {
+            return line(ReservationStore.tombstone(reservationNumber));
+        }
+
+        private byte[] line(String record) {
+            String text = unterminated ? NEWLINE + record + NEWLINE : record + NEWLINE;
+            unterminated = false;
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public synchronized void mark() {
+            markedUnterminated = unterminated;
+        }
+
+        @Override
+        public synchronized void abort() {
+            unterminated = markedUnterminated;
+        }
+
+        // A compacted copy is written from scratch and always ends with a newline.
+        @Override
+        public synchronized Encoder copy() {
+            return new TextEncoder(false);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "text";
+    }
+
+    @Override
+    public Encoder newEncoder() {
+        return new TextEncoder(false);
+    }
+
+    @Override
+    public Encoder replay(InputStream in, RecordVisitor visitor) throws IOException {
+        // Scans bytes rather than using a Reader so the offset of the last complete line is known.
+        // A final line without its newline is kept if it is a whole reservation; otherwise it was
+        // torn by a crash and is left out.
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        byte[] buf = new byte[64 * 1024];
+        long offset = 0;
+        long valid = 0;
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (buf[i] != '\n') continue;
+                line.write(buf, start, i - start);
+                apply(line.toString(StandardCharsets.UTF_8), visitor);
+                line.reset();
+                start = i + 1;
+                valid = offset + i + 1;
+            }
+            line.write(buf, start, n - start);
+            offset += n;
+        }
+        boolean unterminated = false;
+        if (line.size() > 0) {
+            Reservation last = completeRecord(line.toString(StandardCharsets.UTF_8));
+            if (last != null) {
+                visitor.upsert(last);
+                valid = offset;
+                unterminated = true;
+            }
+        }
+        visitor.end(valid);
+        return new TextEncoder(unterminated);
+    }
+
+    // A torn tombstone can still parse (as a shorter reservation number), so only reservations
+    // with every field present and valid count as complete.
+    private static Reservation completeRecord(String line) {
+        if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+        if (line.trim().isEmpty() || ReservationStore.isTombstone(line)) return null;
+        try {
+            return ReservationStore.deserialize(line);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void apply(String line, RecordVisitor visitor) {
+        if (line.trim().isEmpty()) return;
+        if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+        if (ReservationStore.isTombstone(line)) {
+            visitor.tombstone(ReservationStore.tombstoneNumber(line));
+            return;
+        }
+        Reservation r = ReservationStore.deserialize(line);
+        if (r != null) visitor.upsert(r);
+    }
+}